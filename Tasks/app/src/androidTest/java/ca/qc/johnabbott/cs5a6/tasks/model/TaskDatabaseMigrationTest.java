@@ -0,0 +1,133 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Upgrade of a version 1 database, where tasks store dates as strings and enums by name, to the current version.
+ * Uses the database file of the app: it is deleted before and after each test.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskDatabaseMigrationTest {
+
+    // more than two chunks of the table copy.
+    private static final int TASK_COUNT = 1234;
+
+    private Context context;
+    private TaskDatabaseHandler handler;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TaskDatabaseHandler.DATABASE_FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (handler != null)
+            handler.close();
+        context.deleteDatabase(TaskDatabaseHandler.DATABASE_FILE_NAME);
+    }
+
+    private List<UUID> createVersion1Database() {
+        List<UUID> uuids = new ArrayList<>();
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(
+                context.getDatabasePath(TaskDatabaseHandler.DATABASE_FILE_NAME), null);
+        try {
+            database.execSQL("CREATE TABLE task (_id INTEGER PRIMARY KEY AUTOINCREMENT, uuid BLOB, description TEXT, "
+                    + "status TEXT, priority TEXT, entry TEXT, modified TEXT, due TEXT, urgency REAL);");
+            database.beginTransaction();
+            for (int i = 0; i < TASK_COUNT; i++) {
+                UUID uuid = UUID.randomUUID();
+                uuids.add(uuid);
+                ContentValues values = new ContentValues();
+                values.put("uuid", TypeConvertUtils.uuidAsBytes(uuid));
+                values.put("description", "Task number" + i + " to migrate");
+                values.put("status", (i % 2 == 0 ? Status.PENDING : Status.COMPLETED).name());
+                values.put("priority", Priority.MEDIUM.name());
+                values.put("entry", TypeConvertUtils.dateAsString(new Date(1600000000000L + i)));
+                values.put("modified", TypeConvertUtils.dateAsString(new Date(1600000000000L + i)));
+                values.put("urgency", 1.5);
+                database.insert("task", null, values);
+            }
+            database.setTransactionSuccessful();
+            database.endTransaction();
+            database.setVersion(1);
+        } finally {
+            database.close();
+        }
+        return uuids;
+    }
+
+    @Test
+    public void upgradeCopiesAndIndexesAllTasks() throws Exception {
+        List<UUID> uuids = createVersion1Database();
+
+        handler = new TaskDatabaseHandler(context);
+        TaskTable taskTable = handler.getTaskTable();
+        assertTrue(handler.hasPendingMigrations());
+
+        // the old table is read until the copy is done.
+        List<Task> before = taskTable.readAllListRows();
+        assertEquals(TASK_COUNT, before.size());
+        assertEquals(Status.COMPLETED, before.get(1).getStatus());
+
+        handler.resumeMigrations();
+        assertFalse(handler.hasPendingMigrations());
+
+        assertEquals(TASK_COUNT, taskTable.readAllListRows().size());
+        Task task = taskTable.readByUuid(uuids.get(7));
+        assertEquals("Task number7 to migrate", task.getDescription());
+        assertEquals(Status.COMPLETED, task.getStatus());
+        assertEquals(Priority.MEDIUM, task.getPriority());
+        assertEquals(new Date(1600000000007L), task.getModified());
+
+        // every copied task is in the search index.
+        assertEquals(TASK_COUNT, taskTable.search("migrate").size());
+        List<UUID> found = taskTable.search("number1233");
+        assertEquals(1, found.size());
+        assertEquals(uuids.get(TASK_COUNT - 1), found.get(0));
+    }
+
+    @Test
+    public void tasksCannotBeWrittenDuringTheCopy() throws Exception {
+        createVersion1Database();
+
+        handler = new TaskDatabaseHandler(context);
+        TaskTable taskTable = handler.getTaskTable();
+        Task task = new Task().setDescription("Written during the upgrade").setStatus(Status.PENDING);
+        List<Task> saves = new ArrayList<>();
+        saves.add(task);
+        try {
+            taskTable.writeByUuid(saves, new ArrayList<>());
+            throw new AssertionError("the write should be refused");
+        } catch (DatabaseException e) {
+            // expected.
+        }
+
+        handler.resumeMigrations();
+        taskTable.writeByUuid(saves, new ArrayList<>());
+        assertEquals(TASK_COUNT + 1, taskTable.readAllListRows().size());
+        assertEquals(1, taskTable.search("upgrade").size());
+    }
+}
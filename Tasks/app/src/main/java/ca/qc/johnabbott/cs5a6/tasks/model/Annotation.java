@@ -3,22 +3,26 @@ package ca.qc.johnabbott.cs5a6.tasks.model;
 import java.util.Date;
 import java.util.UUID;
 
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Identifiable;
+
 /**
  * An annotation for a task.
  */
-public class Annotation {
+public class Annotation implements Identifiable<Long> {
 
-    private long id;
+    private Long id;
     private Date entry;
     private String description;
     private UUID taskUuid;
 
-    public long getId() {
+    public Long getId() {
         return id;
     }
 
-    public void setId(long id) {
+    @Override
+    public Annotation setId(Long id) {
         this.id = id;
+        return this;
     }
 
     public Date getEntry() {
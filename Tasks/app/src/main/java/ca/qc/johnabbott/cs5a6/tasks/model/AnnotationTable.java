@@ -0,0 +1,142 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Binder;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Column;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Index;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Order;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Query;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.StatementBinder;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Table;
+
+/**
+ * The annotations of tasks, keyed by task UUID.
+ */
+public class AnnotationTable extends Table<Annotation> {
+
+    public static final String TABLE_NAME = "annotation";
+    public static final String COLUMN_TASK_UUID = "task_uuid";
+    public static final String COLUMN_ENTRY = "entry";
+    public static final String COLUMN_DESCRIPTION = "description";
+
+    /**
+     * Create a database table
+     *
+     * @param dbh  the handler that connects to the sqlite database.
+     */
+    public AnnotationTable(SQLiteOpenHelper dbh) {
+        super(dbh, TABLE_NAME);
+        addColumn(new Column(COLUMN_TASK_UUID, Column.Type.BLOB).notNull());
+        addColumn(new Column(COLUMN_ENTRY, Column.Type.INTEGER));
+        addColumn(new Column(COLUMN_DESCRIPTION, Column.Type.TEXT));
+
+        addIndex(new Index(COLUMN_TASK_UUID));
+    }
+
+    /**
+     * Read the annotations of a task, oldest first.
+     * @param taskUuid
+     * @return the annotations.
+     * @throws DatabaseException
+     */
+    public List<Annotation> readByTaskUuid(UUID taskUuid) throws DatabaseException {
+        return query()
+                .where(COLUMN_TASK_UUID, Query.Operator.EQ, taskUuid)
+                .orderBy(Order.asc(COLUMN_ENTRY), Order.asc("_id"))
+                .list();
+    }
+
+    /**
+     * Read the annotations of several tasks, oldest first.
+     * @param taskUuids
+     * @return the annotations.
+     * @throws DatabaseException
+     */
+    public List<Annotation> readByTaskUuids(Collection<UUID> taskUuids) throws DatabaseException {
+        return query()
+                .whereIn(COLUMN_TASK_UUID, taskUuids)
+                .orderBy(Order.asc(COLUMN_ENTRY), Order.asc("_id"))
+                .list();
+    }
+
+    /**
+     * Replace the annotations of a task.
+     * @param database an open, writable database.
+     * @param taskUuid
+     * @param annotations
+     * @throws DatabaseException
+     */
+    public void replaceAnnotations(SQLiteDatabase database, UUID taskUuid, List<Annotation> annotations) throws DatabaseException {
+        deleteAnnotations(database, taskUuid);
+        for (Annotation annotation : annotations)
+            insert(database, annotation.setTaskUuid(taskUuid));
+    }
+
+    /**
+     * Delete the annotations of a task.
+     * @param database an open, writable database.
+     * @param taskUuid
+     * @throws DatabaseException
+     */
+    public void deleteAnnotations(SQLiteDatabase database, UUID taskUuid) throws DatabaseException {
+        SQLiteStatement statement = getStatement(database,
+                String.format("DELETE FROM %s WHERE %s = ?;", getName(), COLUMN_TASK_UUID));
+        synchronized (statement) {
+            try {
+                statement.bindBlob(1, TypeConvertUtils.uuidAsBytes(taskUuid));
+                statement.executeUpdateDelete();
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    @Override
+    protected ContentValues toContentValues(Annotation element) throws DatabaseException {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TASK_UUID, TypeConvertUtils.uuidAsBytes(element.getTaskUuid()));
+        values.put(COLUMN_ENTRY, TypeConvertUtils.dateAsLong(element.getEntry()));
+        values.put(COLUMN_DESCRIPTION, element.getDescription());
+        return values;
+    }
+
+    @Override
+    protected void bindValues(SQLiteStatement statement, Annotation element) throws DatabaseException {
+        Binder binder = new StatementBinder(statement);
+        binder.bindBlob(1, TypeConvertUtils.uuidAsBytes(element.getTaskUuid()));
+        TaskRowCodec.bindDate(binder, 2, element.getEntry());
+        binder.bindString(3, element.getDescription());
+    }
+
+    @Override
+    protected Object toColumnValue(Column column, Object value) throws DatabaseException {
+        if (value instanceof UUID)
+            return TypeConvertUtils.uuidAsBytes((UUID) value);
+        if (value instanceof Date)
+            return TypeConvertUtils.dateAsLong((Date) value);
+        return super.toColumnValue(column, value);
+    }
+
+    @Override
+    protected Annotation fromCursor(Cursor cursor) throws DatabaseException {
+        return new Annotation()
+                .setId(cursor.getLong(0))
+                .setTaskUuid(TypeConvertUtils.bytesAsUuid(cursor.getBlob(1)))
+                .setEntry(cursor.isNull(2) ? null : TypeConvertUtils.longAsDate(cursor.getLong(2)))
+                .setDescription(cursor.getString(3));
+    }
+}
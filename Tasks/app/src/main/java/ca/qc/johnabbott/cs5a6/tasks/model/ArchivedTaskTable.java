@@ -0,0 +1,99 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.List;
+import java.util.UUID;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Column;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Index;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Table;
+
+/**
+ * Completed and deleted tasks moved out of the task table, so they are not read with the task list.
+ * Same columns as the task table: rows are converted by it. Tags and annotations stay in their tables, keyed by UUID.
+ * Archived tasks are only read on demand, for example with `readPage`.
+ */
+public class ArchivedTaskTable extends Table<Task> {
+
+    public static final String TABLE_NAME = "task_archive";
+
+    private final TaskTable taskTable;
+
+    ArchivedTaskTable(SQLiteOpenHelper dbh, TaskTable taskTable) {
+        super(dbh, TABLE_NAME);
+        this.taskTable = taskTable;
+        TaskTable.addTaskColumns(this);
+
+        // lookups by uuid when a task is restored or deleted.
+        addIndex(new Index(TaskTable.COLUMN_UUID).unique());
+    }
+
+    /**
+     * Delete an archived task, with its tags and annotations.
+     * @param database an open, writable database.
+     * @param uuid
+     * @return true if there was an archived task with that UUID.
+     * @throws DatabaseException
+     */
+    public boolean deleteByUuid(SQLiteDatabase database, UUID uuid) throws DatabaseException {
+        if (!removeByUuid(database, uuid))
+            return false;
+        taskTable.getTagTable().deleteTags(database, uuid);
+        taskTable.getAnnotationTable().deleteAnnotations(database, uuid);
+        return true;
+    }
+
+    /**
+     * Remove an archived task, but not its tags and annotations: used when the task is restored.
+     * @param database an open, writable database.
+     * @param uuid
+     * @return true if there was an archived task with that UUID.
+     * @throws DatabaseException
+     */
+    public boolean removeByUuid(SQLiteDatabase database, UUID uuid) throws DatabaseException {
+        SQLiteStatement statement = getStatement(database,
+                String.format("DELETE FROM %s WHERE %s = ?;", getName(), TaskTable.COLUMN_UUID));
+        synchronized (statement) {
+            try {
+                statement.bindBlob(1, TypeConvertUtils.uuidAsBytes(uuid));
+                return statement.executeUpdateDelete() == 1;
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    @Override
+    protected ContentValues toContentValues(Task element) throws DatabaseException {
+        return taskTable.toContentValues(element);
+    }
+
+    @Override
+    protected void bindValues(SQLiteStatement statement, Task element) throws DatabaseException {
+        taskTable.bindValues(statement, element);
+    }
+
+    @Override
+    protected Object toColumnValue(Column column, Object value) throws DatabaseException {
+        return taskTable.toColumnValue(column, value);
+    }
+
+    @Override
+    protected Task fromCursor(Cursor cursor) throws DatabaseException {
+        return taskTable.fromCursor(cursor);
+    }
+
+    @Override
+    protected void hydrate(List<Task> tasks) throws DatabaseException {
+        taskTable.hydrate(tasks);
+    }
+}
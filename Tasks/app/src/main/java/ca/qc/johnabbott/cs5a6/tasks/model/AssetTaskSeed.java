@@ -0,0 +1,106 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.content.res.AssetManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Seed read from a file bundled in the app assets, falling back to another seed if the app has no such file.
+ *
+ * The file holds a magic number, the TaskBinaryCodec version and the number of tasks, followed by the tasks encoded
+ * by TaskBinaryCodec. `write` creates such a file. The time taken to seed is logged on first run.
+ */
+public class AssetTaskSeed implements TaskSeed {
+
+    private static final int MAGIC = 0x54534544; // "TSED"
+
+    private final AssetManager assets;
+    private final String path;
+    private final TaskSeed fallback;
+
+    /**
+     * @param assets the app assets.
+     * @param path the path of the seed file in the assets.
+     * @param fallback the seed used if there is no file at that path.
+     */
+    public AssetTaskSeed(AssetManager assets, String path, TaskSeed fallback) {
+        this.assets = assets;
+        this.path = path;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Reader open() throws IOException {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(assets.open(path)));
+        } catch (FileNotFoundException e) {
+            return fallback.open();
+        }
+
+        return read(in, "Asset " + path);
+    }
+
+    /*
+     * Read the header of a seed file, then return a reader of its tasks. The stream is closed if the header is
+     * invalid, and by the reader otherwise.
+     */
+    static Reader read(DataInputStream in, String name) throws IOException {
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException(name + " is not a task seed.");
+            int version = in.readInt();
+            if (version != TaskBinaryCodec.FORMAT_VERSION)
+                throw new IOException(name + " has unsupported version " + version);
+            int size = in.readInt();
+
+            return new Reader() {
+                private int read;
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Task next() throws IOException {
+                    if (read == size)
+                        return null;
+                    read++;
+                    return TaskBinaryCodec.read(in);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    in.close();
+                }
+            };
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write tasks in the format of a seed asset.
+     * @param out
+     * @param tasks
+     * @throws IOException
+     */
+    public static void write(OutputStream out, Collection<Task> tasks) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(TaskBinaryCodec.FORMAT_VERSION);
+        data.writeInt(tasks.size());
+        for (Task task : tasks)
+            TaskBinaryCodec.write(data, task);
+        data.flush();
+    }
+}
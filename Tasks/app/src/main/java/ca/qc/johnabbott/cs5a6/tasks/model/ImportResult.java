@@ -0,0 +1,54 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+/**
+ * Counts of what an import did with the incoming tasks.
+ */
+public class ImportResult {
+
+    private int inserted;
+    private int updated;
+    private int skipped;
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public int getTotal() {
+        return inserted + updated + skipped;
+    }
+
+    void addInserted() {
+        inserted++;
+    }
+
+    void addUpdated() {
+        updated++;
+    }
+
+    void addSkipped() {
+        skipped++;
+    }
+
+    void add(ImportResult other) {
+        inserted += other.inserted;
+        updated += other.updated;
+        skipped += other.skipped;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "inserted=" + inserted +
+                ", updated=" + updated +
+                ", skipped=" + skipped +
+                '}';
+    }
+}
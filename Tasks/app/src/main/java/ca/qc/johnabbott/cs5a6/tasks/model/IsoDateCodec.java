@@ -0,0 +1,198 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Thread-safe conversion of dates to and from the "yyyy-MM-dd'T'HH:mm:ss.SSSZ" pattern, in the default time zone.
+ *
+ * Produces and accepts exactly the same strings as `SimpleDateFormat` with that pattern, which is neither
+ * thread-safe nor cheap. Fields are converted with integer arithmetic into a per-thread buffer, so the only
+ * allocation is the resulting string. Dates outside years 1583-9999 (where `SimpleDateFormat` switches to the
+ * Julian calendar or widens the year) and strings that are not in the canonical layout go through a per-thread
+ * `SimpleDateFormat` instead.
+ */
+public final class IsoDateCodec {
+
+    public static final String PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    // "yyyy-MM-ddTHH:mm:ss.SSS+hhmm"
+    private static final int LENGTH = 28;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final int MIN_YEAR = 1583;
+    private static final int MAX_YEAR = 9999;
+
+    // like a SimpleDateFormat, the time zone is fixed when the codec is created.
+    private static final TimeZone TIME_ZONE = TimeZone.getDefault();
+
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[LENGTH];
+        }
+    };
+
+    private static final ThreadLocal<SimpleDateFormat> FALLBACK = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat(PATTERN);
+            format.setTimeZone(TIME_ZONE);
+            return format;
+        }
+    };
+
+    private IsoDateCodec() {
+    }
+
+    /**
+     * Format a date.
+     * @param millis the date in milliseconds since the epoch.
+     * @return the formatted date.
+     */
+    public static String format(long millis) {
+        return format(millis, TIME_ZONE);
+    }
+
+    /*
+     * Format a date in a given time zone. For tests: the codec itself only uses the default time zone.
+     */
+    static String format(long millis, TimeZone timeZone) {
+        int offset = timeZone.getOffset(millis);
+        long local = millis + offset;
+        long days = Math.floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+
+        // civil date from days since the epoch (proleptic Gregorian).
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < MIN_YEAR || year > MAX_YEAR)
+            return fallback(timeZone).format(new Date(millis));
+
+        char[] buffer = BUFFER.get();
+        put(buffer, 0, (int) year, 4);
+        buffer[4] = '-';
+        put(buffer, 5, month, 2);
+        buffer[7] = '-';
+        put(buffer, 8, day, 2);
+        buffer[10] = 'T';
+        put(buffer, 11, millisOfDay / 3600000, 2);
+        buffer[13] = ':';
+        put(buffer, 14, millisOfDay / 60000 % 60, 2);
+        buffer[16] = ':';
+        put(buffer, 17, millisOfDay / 1000 % 60, 2);
+        buffer[19] = '.';
+        put(buffer, 20, millisOfDay % 1000, 3);
+
+        // like SimpleDateFormat, offsets are truncated to the minute.
+        int offsetMinutes = offset / 60000;
+        buffer[23] = offsetMinutes < 0 ? '-' : '+';
+        offsetMinutes = Math.abs(offsetMinutes);
+        put(buffer, 24, offsetMinutes / 60 * 100 + offsetMinutes % 60, 4);
+
+        return new String(buffer, 0, LENGTH);
+    }
+
+    /**
+     * Parse a date.
+     * @param string the formatted date.
+     * @return the date in milliseconds since the epoch.
+     * @throws ParseException if the string is not a date.
+     */
+    public static long parse(String string) throws ParseException {
+        return parse(string, TIME_ZONE);
+    }
+
+    /*
+     * Parse a date in a given time zone, used when the string has no offset. For tests, like `format`.
+     */
+    static long parse(String string, TimeZone timeZone) throws ParseException {
+        if (string.length() == LENGTH
+                && string.charAt(4) == '-' && string.charAt(7) == '-' && string.charAt(10) == 'T'
+                && string.charAt(13) == ':' && string.charAt(16) == ':' && string.charAt(19) == '.'
+                && (string.charAt(23) == '+' || string.charAt(23) == '-')) {
+
+            int year = get(string, 0, 4);
+            int month = get(string, 5, 2);
+            int day = get(string, 8, 2);
+            int hour = get(string, 11, 2);
+            int minute = get(string, 14, 2);
+            int second = get(string, 17, 2);
+            int millis = get(string, 20, 3);
+            int offsetHours = get(string, 24, 2);
+            int offsetMinutes = get(string, 26, 2);
+
+            if (year >= MIN_YEAR && year <= MAX_YEAR
+                    && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60
+                    && millis >= 0 && offsetHours >= 0 && offsetMinutes >= 0 && offsetMinutes < 60) {
+
+                // days since the epoch from the civil date (proleptic Gregorian).
+                int y = month <= 2 ? year - 1 : year;
+                int era = y / 400;
+                int yoe = y - era * 400;
+                int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+                int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+                long days = era * 146097L + doe - 719468;
+
+                long offset = (offsetHours * 60L + offsetMinutes) * 60000L;
+                if (string.charAt(23) == '-')
+                    offset = -offset;
+
+                return days * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L + millis - offset;
+            }
+        }
+        return fallback(timeZone).parse(string).getTime();
+    }
+
+    private static SimpleDateFormat fallback(TimeZone timeZone) {
+        if (timeZone == TIME_ZONE)
+            return FALLBACK.get();
+        SimpleDateFormat format = new SimpleDateFormat(PATTERN);
+        format.setTimeZone(timeZone);
+        return format;
+    }
+
+    private static void put(char[] buffer, int position, int value, int width) {
+        for (int i = position + width - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    // returns -1 if the characters are not all digits.
+    private static int get(String string, int position, int width) {
+        int value = 0;
+        for (int i = position; i < position + width; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
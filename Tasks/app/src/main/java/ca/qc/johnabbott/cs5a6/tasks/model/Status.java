@@ -2,6 +2,8 @@ package ca.qc.johnabbott.cs5a6.tasks.model;
 
 /**
  * Task status values.
+ *
+ * Values are stored in the database by ordinal: only add new values at the end.
  */
 public enum Status {
     PENDING,
@@ -0,0 +1,43 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import java.util.UUID;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Identifiable;
+
+/**
+ * A tag on a task, as stored in the database. Tasks hold their tags as a list of names.
+ */
+public class Tag implements Identifiable<Long> {
+
+    private Long id;
+    private UUID taskUuid;
+    private String name;
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public Tag setId(Long id) {
+        this.id = id;
+        return this;
+    }
+
+    public UUID getTaskUuid() {
+        return taskUuid;
+    }
+
+    public Tag setTaskUuid(UUID taskUuid) {
+        this.taskUuid = taskUuid;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Tag setName(String name) {
+        this.name = name;
+        return this;
+    }
+}
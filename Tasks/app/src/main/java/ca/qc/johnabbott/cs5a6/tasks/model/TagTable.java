@@ -0,0 +1,120 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Column;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Index;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Order;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Table;
+
+/**
+ * The tags of tasks, one row per tag, keyed by task UUID.
+ */
+public class TagTable extends Table<Tag> {
+
+    public static final String TABLE_NAME = "task_tag";
+    public static final String COLUMN_TASK_UUID = "task_uuid";
+    public static final String COLUMN_NAME = "name";
+
+    /**
+     * Create a database table
+     *
+     * @param dbh  the handler that connects to the sqlite database.
+     */
+    public TagTable(SQLiteOpenHelper dbh) {
+        super(dbh, TABLE_NAME);
+        addColumn(new Column(COLUMN_TASK_UUID, Column.Type.BLOB).notNull());
+        addColumn(new Column(COLUMN_NAME, Column.Type.TEXT).notNull());
+
+        addIndex(new Index(COLUMN_TASK_UUID));
+    }
+
+    /**
+     * Read the tags of several tasks, in the order they were added.
+     * @param taskUuids
+     * @return the tags.
+     * @throws DatabaseException
+     */
+    public List<Tag> readByTaskUuids(Collection<UUID> taskUuids) throws DatabaseException {
+        return query()
+                .whereIn(COLUMN_TASK_UUID, taskUuids)
+                .orderBy(Order.asc("_id"))
+                .list();
+    }
+
+    /**
+     * Replace the tags of a task. Blank tags are not stored.
+     * @param database an open, writable database.
+     * @param taskUuid
+     * @param names the tag names.
+     * @throws DatabaseException
+     */
+    public void replaceTags(SQLiteDatabase database, UUID taskUuid, List<String> names) throws DatabaseException {
+        deleteTags(database, taskUuid);
+        for (String name : names) {
+            if (name == null || name.trim().isEmpty())
+                continue;
+            insert(database, new Tag().setTaskUuid(taskUuid).setName(name));
+        }
+    }
+
+    /**
+     * Delete the tags of a task.
+     * @param database an open, writable database.
+     * @param taskUuid
+     * @throws DatabaseException
+     */
+    public void deleteTags(SQLiteDatabase database, UUID taskUuid) throws DatabaseException {
+        SQLiteStatement statement = getStatement(database,
+                String.format("DELETE FROM %s WHERE %s = ?;", getName(), COLUMN_TASK_UUID));
+        synchronized (statement) {
+            try {
+                statement.bindBlob(1, TypeConvertUtils.uuidAsBytes(taskUuid));
+                statement.executeUpdateDelete();
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    @Override
+    protected ContentValues toContentValues(Tag element) throws DatabaseException {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TASK_UUID, TypeConvertUtils.uuidAsBytes(element.getTaskUuid()));
+        values.put(COLUMN_NAME, element.getName());
+        return values;
+    }
+
+    @Override
+    protected void bindValues(SQLiteStatement statement, Tag element) throws DatabaseException {
+        statement.bindBlob(1, TypeConvertUtils.uuidAsBytes(element.getTaskUuid()));
+        statement.bindString(2, element.getName());
+    }
+
+    @Override
+    protected Object toColumnValue(Column column, Object value) throws DatabaseException {
+        if (value instanceof UUID)
+            return TypeConvertUtils.uuidAsBytes((UUID) value);
+        return super.toColumnValue(column, value);
+    }
+
+    @Override
+    protected Tag fromCursor(Cursor cursor) throws DatabaseException {
+        return new Tag()
+                .setId(cursor.getLong(0))
+                .setTaskUuid(TypeConvertUtils.bytesAsUuid(cursor.getBlob(1)))
+                .setName(cursor.getString(2));
+    }
+}
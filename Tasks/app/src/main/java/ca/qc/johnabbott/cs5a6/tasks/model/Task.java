@@ -18,6 +18,20 @@ import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Identifiable;
  */
 public class Task implements Identifiable<Long> {
 
+    // Persisted fields, as bits of the dirty fields: the fields changed since the task was read.
+    // The first eight are the columns of the task table, in order.
+    public static final int FIELD_UUID = 1;
+    public static final int FIELD_DESCRIPTION = 1 << 1;
+    public static final int FIELD_STATUS = 1 << 2;
+    public static final int FIELD_PRIORITY = 1 << 3;
+    public static final int FIELD_ENTRY = 1 << 4;
+    public static final int FIELD_MODIFIED = 1 << 5;
+    public static final int FIELD_DUE = 1 << 6;
+    public static final int FIELD_URGENCY = 1 << 7;
+    public static final int FIELD_TAGS = 1 << 8;
+    public static final int FIELD_ANNOTATIONS = 1 << 9;
+    public static final int ALL_FIELDS = (1 << 10) - 1;
+
     // generate local IDs (in memory only).
     private static Long CURRENT_LOCAL_ID = 0L;
 
@@ -34,7 +48,10 @@ public class Task implements Identifiable<Long> {
 
     private String project;
     private List<Annotation> annotations;
+    private boolean annotationsLoaded;  // annotations are only read from the database on demand
     private List<String> tags;
+    private boolean detailsLoaded = true;  // list rows are read without their entry and modified dates
+    private int dirtyFields;                // FIELD_* bits set by the setters
 
     // Standard dates and times for tasks
     private Date entry;     // created timestamp
@@ -94,8 +111,9 @@ public class Task implements Identifiable<Long> {
         this.uuid = uuid;
         status = Status.NONE;
         priority = Priority.NONE;
-        tags = new ArrayList<>();
-        annotations = new ArrayList<>();
+        // most tasks have no tags or annotations: an empty ArrayList does not allocate its array until it is added to.
+        tags = new ArrayList<>(0);
+        annotations = new ArrayList<>(0);
     }
 
  
@@ -114,6 +132,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setUuid(UUID uuid) {
+        if (!Objects.equals(this.uuid, uuid))
+            dirtyFields |= FIELD_UUID;
         this.uuid = uuid;
         return this;
     }
@@ -123,6 +143,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setDescription(String description) {
+        if (!Objects.equals(this.description, description))
+            dirtyFields |= FIELD_DESCRIPTION;
         this.description = description;
         return this;
     }
@@ -132,6 +154,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setStatus(Status status) {
+        if (this.status != status)
+            dirtyFields |= FIELD_STATUS;
         this.status = status;
         return this;
     }
@@ -141,6 +165,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setPriority(Priority priority) {
+        if (this.priority != priority)
+            dirtyFields |= FIELD_PRIORITY;
         this.priority = priority;
         return this;
     }
@@ -150,6 +176,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setEntry(Date entry) {
+        if (!Objects.equals(this.entry, entry))
+            dirtyFields |= FIELD_ENTRY;
         this.entry = entry;
         return this;
     }
@@ -159,6 +187,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setModified(Date modified) {
+        if (!Objects.equals(this.modified, modified))
+            dirtyFields |= FIELD_MODIFIED;
         this.modified = modified;
         return this;
     }
@@ -186,6 +216,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setDue(Date due) {
+        if (!Objects.equals(this.due, due))
+            dirtyFields |= FIELD_DUE;
         this.due = due;
         return this;
     }
@@ -276,6 +308,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setTags(List<String> tags) {
+        // always dirty: the list may be the same, changed in place.
+        dirtyFields |= FIELD_TAGS;
         this.tags = tags;
         return this;
     }
@@ -285,6 +319,8 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setUrgency(double urgency) {
+        if (this.urgency != urgency)
+            dirtyFields |= FIELD_URGENCY;
         this.urgency = urgency;
         return this;
     }
@@ -318,7 +354,88 @@ public class Task implements Identifiable<Long> {
     }
 
     public Task setAnnotations(List<Annotation> annotations) {
+        dirtyFields |= FIELD_ANNOTATIONS;
         this.annotations = annotations;
+        this.annotationsLoaded = true;
+        return this;
+    }
+
+    /**
+     * Check whether the annotations were set, as opposed to not read from the database yet.
+     * @return true if the annotations list is complete.
+     */
+    public boolean isAnnotationsLoaded() {
+        return annotationsLoaded;
+    }
+
+    /**
+     * Check whether the entry and modified dates were read, as opposed to a task read as a list row.
+     * @return true if the task is complete, apart from its annotations.
+     */
+    public boolean isDetailsLoaded() {
+        return detailsLoaded;
+    }
+
+    /**
+     * Get the persisted fields changed by the setters since the task was read, or since they were last cleared.
+     * @return FIELD_* bits.
+     */
+    public int getDirtyFields() {
+        return dirtyFields;
+    }
+
+    /**
+     * Clear some dirty fields, for example once their values are written to the database.
+     * @param fields FIELD_* bits.
+     * @return the task.
+     */
+    public Task clearDirtyFields(int fields) {
+        dirtyFields &= ~fields;
+        return this;
+    }
+
+    /**
+     * Mark fields as dirty, for example when their changes were not written after all.
+     * @param fields FIELD_* bits.
+     * @return the task.
+     */
+    public Task markDirtyFields(int fields) {
+        dirtyFields |= fields & ALL_FIELDS;
+        return this;
+    }
+
+    /**
+     * Mark all the fields the task has as dirty, so that a write replaces the stored task.
+     * The dates of a list row are left out, since it does not have them.
+     * @return the task.
+     */
+    public Task markAllFieldsDirty() {
+        return markDirtyFields(detailsLoaded ? ALL_FIELDS : ALL_FIELDS & ~(FIELD_ENTRY | FIELD_MODIFIED));
+    }
+
+    Task setDetailsLoaded(boolean detailsLoaded) {
+        this.detailsLoaded = detailsLoaded;
+        return this;
+    }
+
+    /**
+     * Take the dates and annotations this task was read without from a copy of it that has them, for example a copy
+     * loaded in the background. The fields changed on this task since the copy was made are kept.
+     * @param loaded a copy of this task, with its details or annotations loaded.
+     * @return the task.
+     */
+    public Task setDetailsFrom(Task loaded) {
+        if (!detailsLoaded && loaded.detailsLoaded) {
+            if ((dirtyFields & FIELD_ENTRY) == 0)
+                entry = loaded.entry;
+            if ((dirtyFields & FIELD_MODIFIED) == 0)
+                modified = loaded.modified;
+            detailsLoaded = true;
+        }
+        if (!annotationsLoaded && loaded.annotationsLoaded) {
+            annotations = new ArrayList<>(loaded.annotations);
+            annotationsLoaded = true;
+        }
         return this;
     }
 
@@ -384,6 +501,9 @@ public class Task implements Identifiable<Long> {
         tmp.setTags(new ArrayList<>(this.tags));
         tmp.setUrgency(this.urgency);
         tmp.setAnnotations(new ArrayList<>(this.annotations));
+        tmp.annotationsLoaded = this.annotationsLoaded;
+        tmp.detailsLoaded = this.detailsLoaded;
+        tmp.dirtyFields = this.dirtyFields;
         return tmp;
     }
 
@@ -0,0 +1,183 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of the persisted fields of a task: the task table columns, tags and, when loaded,
+ * annotations. Used for files the app writes and reads back itself, never for exchange with other tools.
+ *
+ * A task is encoded as:
+ *   - a byte of flags for the nullable fields and for tasks read as list rows,
+ *   - the id, if any, and the UUID as two longs,
+ *   - the description as a length-prefixed UTF-8 string,
+ *   - status and priority codes as bytes, then the entry, modified and due dates as epoch millis, if any,
+ *   - the urgency as a double,
+ *   - the tags, then the annotations if loaded, each prefixed by their count.
+ */
+public final class TaskBinaryCodec {
+
+    /**
+     * Version of the encoding. Files holding encoded tasks should store it in their header.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_DESCRIPTION = 1 << 1;
+    private static final int HAS_ENTRY = 1 << 2;
+    private static final int HAS_MODIFIED = 1 << 3;
+    private static final int HAS_DUE = 1 << 4;
+    private static final int HAS_ANNOTATIONS = 1 << 5;
+    private static final int LIST_ROW = 1 << 6;
+
+    private TaskBinaryCodec() {}
+
+    /**
+     * Write a task.
+     * @param out
+     * @param task
+     * @throws IOException
+     */
+    public static void write(DataOutput out, Task task) throws IOException {
+        int flags = 0;
+        if (task.getId() != null)
+            flags |= HAS_ID;
+        if (task.getDescription() != null)
+            flags |= HAS_DESCRIPTION;
+        if (task.getEntry() != null)
+            flags |= HAS_ENTRY;
+        if (task.getModified() != null)
+            flags |= HAS_MODIFIED;
+        if (task.getDue() != null)
+            flags |= HAS_DUE;
+        if (task.isAnnotationsLoaded())
+            flags |= HAS_ANNOTATIONS;
+        if (!task.isDetailsLoaded())
+            flags |= LIST_ROW;
+        out.writeByte(flags);
+
+        if (task.getId() != null)
+            out.writeLong(task.getId());
+        out.writeLong(task.getUuid().getMostSignificantBits());
+        out.writeLong(task.getUuid().getLeastSignificantBits());
+        if (task.getDescription() != null)
+            writeString(out, task.getDescription());
+        out.writeByte(TypeConvertUtils.statusAsInt(task.getStatus()));
+        out.writeByte(TypeConvertUtils.priorityAsInt(task.getPriority()));
+        if (task.getEntry() != null)
+            out.writeLong(task.getEntry().getTime());
+        if (task.getModified() != null)
+            out.writeLong(task.getModified().getTime());
+        if (task.getDue() != null)
+            out.writeLong(task.getDue().getTime());
+        out.writeDouble(task.getUrgency());
+
+        out.writeInt(task.getTags().size());
+        for (String tag : task.getTags())
+            writeString(out, tag);
+
+        if (task.isAnnotationsLoaded()) {
+            out.writeInt(task.getAnnotations().size());
+            for (Annotation annotation : task.getAnnotations())
+                writeAnnotation(out, annotation);
+        }
+    }
+
+    /**
+     * Read a task written by `write`.
+     * @param in
+     * @return the task.
+     * @throws IOException
+     */
+    public static Task read(DataInput in) throws IOException {
+        int flags = in.readUnsignedByte();
+
+        Long id = (flags & HAS_ID) != 0 ? in.readLong() : null;
+        UUID uuid = new UUID(in.readLong(), in.readLong());
+        Task task = new Task(id, uuid).setDetailsLoaded((flags & LIST_ROW) == 0);
+        if ((flags & HAS_DESCRIPTION) != 0)
+            task.setDescription(readString(in));
+        task.setStatus(TypeConvertUtils.intAsStatus(in.readUnsignedByte()));
+        task.setPriority(TypeConvertUtils.intAsPriority(in.readUnsignedByte()));
+        if ((flags & HAS_ENTRY) != 0)
+            task.setEntry(new Date(in.readLong()));
+        if ((flags & HAS_MODIFIED) != 0)
+            task.setModified(new Date(in.readLong()));
+        if ((flags & HAS_DUE) != 0)
+            task.setDue(new Date(in.readLong()));
+        task.setUrgency(in.readDouble());
+
+        int tagCount = readCount(in);
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++)
+            tags.add(readString(in));
+        task.setTags(tags);
+
+        if ((flags & HAS_ANNOTATIONS) != 0) {
+            int annotationCount = readCount(in);
+            List<Annotation> annotations = new ArrayList<>(annotationCount);
+            for (int i = 0; i < annotationCount; i++)
+                annotations.add(readAnnotation(in, uuid));
+            task.setAnnotations(annotations);
+        }
+        return task;
+    }
+
+    private static void writeAnnotation(DataOutput out, Annotation annotation) throws IOException {
+        int flags = 0;
+        if (annotation.getId() != null)
+            flags |= HAS_ID;
+        if (annotation.getDescription() != null)
+            flags |= HAS_DESCRIPTION;
+        if (annotation.getEntry() != null)
+            flags |= HAS_ENTRY;
+        out.writeByte(flags);
+
+        if (annotation.getId() != null)
+            out.writeLong(annotation.getId());
+        if (annotation.getDescription() != null)
+            writeString(out, annotation.getDescription());
+        if (annotation.getEntry() != null)
+            out.writeLong(annotation.getEntry().getTime());
+    }
+
+    private static Annotation readAnnotation(DataInput in, UUID taskUuid) throws IOException {
+        int flags = in.readUnsignedByte();
+
+        Annotation annotation = new Annotation().setTaskUuid(taskUuid);
+        if ((flags & HAS_ID) != 0)
+            annotation.setId(in.readLong());
+        if ((flags & HAS_DESCRIPTION) != 0)
+            annotation.setDescription(readString(in));
+        if ((flags & HAS_ENTRY) != 0)
+            annotation.setEntry(new Date(in.readLong()));
+        return annotation;
+    }
+
+    // DataOutput.writeUTF is limited to 64 KB and uses modified UTF-8.
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // a negative count can only come from a corrupt or truncated file.
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Invalid count " + count);
+        return count;
+    }
+}
@@ -183,5 +183,10 @@ public class TaskData {
         return data;
     }
 
+    // The sample tasks, read when a new database is seeded.
+    public static TaskSeed getSeed() {
+        return () -> TaskSeed.of(getData()).open();
+    }
+
 
 }
\ No newline at end of file
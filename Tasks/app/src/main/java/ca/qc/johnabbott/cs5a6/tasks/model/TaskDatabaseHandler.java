@@ -1,33 +1,213 @@
 package ca.qc.johnabbott.cs5a6.tasks.model;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import androidx.annotation.Nullable;
 
 import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
-import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Table;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.IdentityCache;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Migration;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.MigrationRegistry;
 
+/**
+ * Handler for the tasks database.
+ *
+ * The handler owns a single long-lived database: tables never close it, it is only closed with the handler.
+ * The database is journaled with a write-ahead log so that readers run concurrently with the writer. In that mode,
+ * Android keeps a pool of connections: the primary one does every write, and reads outside of a transaction may run
+ * on secondary, read-only ones.
+ */
 public class TaskDatabaseHandler extends SQLiteOpenHelper {
 
 
     public static final String DATABASE_FILE_NAME = "tasks.db";
-    public static final int DATABASE_VERSION = 1;
+    public static final int DATABASE_VERSION = 6;
 
-    private Table<Task> taskTable;
+    // Estimated bytes of tasks kept in the identity map of the task table.
+    private static final int TASK_CACHE_BYTES = 1024 * 1024;
+
+    // Tasks a new database is seeded with, in the app assets. See AssetTaskSeed.
+    public static final String SEED_ASSET = "tasks_seed.bin";
+
+    // In WAL mode NORMAL only syncs at checkpoints: a commit can be lost on power failure, but never corrupts the db.
+    private static final String SYNCHRONOUS = "NORMAL";
+
+    // Size of the memory-mapped I/O window (bytes).
+    private static final long MMAP_SIZE = 64L * 1024 * 1024;
+
+    // Value of `PRAGMA auto_vacuum` for incremental vacuum.
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Handlers of this process that are not closed, see `openIfUnused`.
+    private static int openHandlers;
+
+    private TaskTable taskTable;
+    private final MigrationRegistry migrations;
+    private boolean closed;
 
     public TaskDatabaseHandler(@Nullable Context context) {
         super(context, DATABASE_FILE_NAME, null, DATABASE_VERSION);
+        synchronized (TaskDatabaseHandler.class) {
+            openHandlers++;
+        }
+        setWriteAheadLoggingEnabled(true);
         taskTable = new TaskTable(this);
+        taskTable.setCache(new IdentityCache<>(TASK_CACHE_BYTES, TaskTable::estimateSize, Task::getUuid));
+
+        // a bundled seed file replaces the sample tasks, if the app has one.
+        if (context != null)
+            taskTable.setSeed(new AssetTaskSeed(context.getAssets(), SEED_ASSET, TaskData.getSeed()), null);
+
+        migrations = new MigrationRegistry()
+                .add(new Migration(2, "secondary indexes on tasks") {
+                    @Override
+                    public void upgrade(SQLiteDatabase database) throws DatabaseException {
+                        taskTable.createIndexes(database);
+                    }
+                })
+                .add(new Migration(3, "tasks store dates as epoch millis and enums as codes") {
+                    @Override
+                    public void upgrade(SQLiteDatabase database) {
+                        taskTable.startCompactEncodingMigration(database);
+                    }
+
+                    @Override
+                    public boolean hasChunks() {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean migrateChunk(SQLiteDatabase database) throws DatabaseException {
+                        return taskTable.migrateCompactEncodingChunk(database);
+                    }
+                })
+                .add(new Migration(4, "task tags and annotations") {
+                    @Override
+                    public void upgrade(SQLiteDatabase database) throws DatabaseException {
+                        taskTable.getTagTable().createTable(database);
+                        taskTable.getAnnotationTable().createTable(database);
+                    }
+                })
+                .add(new Migration(5, "full-text index of task descriptions") {
+                    @Override
+                    public void upgrade(SQLiteDatabase database) {
+                        taskTable.createSearchIndex(database);
+                    }
+                })
+                .add(new Migration(6, "archive of completed and deleted tasks") {
+                    @Override
+                    public void upgrade(SQLiteDatabase database) throws DatabaseException {
+                        taskTable.getArchivedTaskTable().createTable(database);
+                    }
+                });
+    }
+
+    /**
+     * Open a handler, unless another handler of this process is open: the app is using the database.
+     * @param context
+     * @return the handler, or null if the database is in use.
+     */
+    public static synchronized TaskDatabaseHandler openIfUnused(Context context) {
+        if (openHandlers > 0)
+            return null;
+        return new TaskDatabaseHandler(context);
     }
 
-    public Table<Task> getTaskTable() {
+    public TaskTable getTaskTable() {
         return taskTable;
     }
 
+    /**
+     * Refresh the query planner statistics, merge the segments of the search index and, once the database is in
+     * incremental vacuum, return free pages to the file system. Takes the write lock: run it in the background,
+     * away from the writes of the app.
+     */
+    public void maintain() {
+        SQLiteDatabase database = getWritableDatabase();
+        database.execSQL("ANALYZE;");
+        taskTable.optimizeSearchIndex(database);
+
+        if (!needsFullVacuum()) {
+            // this pragma returns a row per page freed, so it must be run as a query.
+            Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum;", null);
+            while (cursor.moveToNext());
+            cursor.close();
+        }
+    }
+
+    /**
+     * Check if the database still has to be switched to incremental vacuum. New databases are created that way,
+     * databases created by earlier versions of the app need `vacuumFully`.
+     * @return true if `vacuumFully` has work to do.
+     */
+    public boolean needsFullVacuum() {
+        return DatabaseUtils.longForQuery(getWritableDatabase(), "PRAGMA auto_vacuum;", null) != AUTO_VACUUM_INCREMENTAL;
+    }
+
+    /**
+     * Switch the database to incremental vacuum. This rewrites the whole file while holding the write lock: run it
+     * from a handler of `openIfUnused`, when the app is not used, see TaskVacuumJobService.
+     */
+    public void vacuumFully() {
+        SQLiteDatabase database = getWritableDatabase();
+        database.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+        database.execSQL("VACUUM;");
+    }
+
+    /**
+     * Check if the data rewrites of an upgrade are not complete yet. Until they are, the task table reads from the
+     * old tables, and the task table must not be written to: see `resumeMigrations`.
+     * @return true if `resumeMigrations` has work to do.
+     */
+    public boolean hasPendingMigrations() {
+        return migrations.hasPending(getWritableDatabase());
+    }
+
+    /**
+     * Finish the data rewrites left by an upgrade, or by a previous run that was interrupted. Each chunk is its own
+     * transaction. Run it in the background, before any write of tasks: a large upgrade takes a while.
+     * @throws DatabaseException
+     */
+    public void resumeMigrations() throws DatabaseException {
+        migrations.resume(getWritableDatabase());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (taskTable != null)
+            taskTable.closeStatements();
+        super.close();
+        if (!closed) {
+            closed = true;
+            synchronized (TaskDatabaseHandler.class) {
+                openHandlers--;
+            }
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase database) {
+        // These pragmas are per connection, and onConfigure only runs them on the primary connection. synchronous
+        // applies to every write, since they are all done on it. Reads run on a secondary connection do not use
+        // memory-mapped I/O.
+        database.execSQL("PRAGMA synchronous = " + SYNCHRONOUS);
+
+        // this pragma returns a row, so it must be run as a query.
+        Cursor cursor = database.rawQuery("PRAGMA mmap_size = " + MMAP_SIZE, null);
+        cursor.moveToFirst();
+        cursor.close();
+    }
+
     @Override
     public void onCreate(SQLiteDatabase database) {
+        // only takes effect before the first table is created: later, it needs a VACUUM.
+        database.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+        migrations.create(database);
         try {
             taskTable.createTable(database);
         } catch (DatabaseException e) {
@@ -36,7 +216,12 @@ public class TaskDatabaseHandler extends SQLiteOpenHelper {
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase database, int i, int i1) {
-
+    public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        try {
+            migrations.upgrade(database, oldVersion, newVersion);
+        } catch (DatabaseException e) {
+            // abort the upgrade, it will be attempted again on the next open.
+            throw new SQLException("Could not upgrade database to version " + newVersion, e);
+        }
     }
 }
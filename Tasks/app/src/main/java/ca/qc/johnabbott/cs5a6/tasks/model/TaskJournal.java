@@ -0,0 +1,166 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of task writes that are not yet in the database, so they can be replayed if the process dies
+ * before they are flushed.
+ *
+ * The file starts with a magic number and the codec version, followed by records of:
+ *   - the length of the payload and its CRC32,
+ *   - the payload: a byte for the kind of write, then the task encoded by TaskBinaryCodec.
+ *
+ * Each record is written with a single call, without a sync: it survives the process, not a power failure.
+ * Reading stops at the first truncated or corrupt record.
+ */
+public class TaskJournal implements Closeable {
+
+    private static final String TAG = "TaskJournal";
+    private static final int MAGIC = 0x544A524E; // "TJRN"
+
+    private static final int SAVE = 1;
+    private static final int DELETE = 2;
+
+    /**
+     * A write read back from the journal.
+     */
+    public static class Entry {
+        private final Task task;
+        private final boolean delete;
+
+        private Entry(Task task, boolean delete) {
+            this.task = task;
+            this.delete = delete;
+        }
+
+        public Task getTask() {
+            return task;
+        }
+
+        public boolean isDelete() {
+            return delete;
+        }
+    }
+
+    private final File file;
+    private FileOutputStream out;
+
+    public TaskJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Append a write of a task.
+     * @param task the task to save or delete.
+     * @param delete true if the task is deleted.
+     * @throws IOException
+     */
+    public synchronized void append(Task task, boolean delete) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeByte(delete ? DELETE : SAVE);
+        TaskBinaryCodec.write(data, task);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.size() + 8);
+        DataOutputStream header = new DataOutputStream(record);
+        header.writeInt(payload.size());
+        header.writeInt((int) crc.getValue());
+        payload.writeTo(record);
+
+        open().write(record.toByteArray());
+    }
+
+    /**
+     * Read all writes in the journal, oldest first.
+     * @return the writes.
+     * @throws IOException
+     */
+    public synchronized List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.exists())
+            return entries;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != TaskBinaryCodec.FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring journal " + file + " with an unknown format.");
+                return entries;
+            }
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > file.length())
+                    throw new IOException("Invalid record length " + length);
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum)
+                    throw new IOException("Record checksum mismatch");
+
+                DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+                boolean delete = data.readUnsignedByte() == DELETE;
+                entries.add(new Entry(TaskBinaryCodec.read(data), delete));
+            }
+        } catch (EOFException e) {
+            // end of the journal, or a record cut short when the process died.
+        } catch (IOException e) {
+            Log.w(TAG, "Journal " + file + " is corrupt after " + entries.size() + " records.", e);
+        }
+        return entries;
+    }
+
+    /**
+     * Discard all writes, once they are in the database.
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        close();
+        out = new FileOutputStream(file, false);
+        writeHeader(out);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private FileOutputStream open() throws IOException {
+        if (out == null) {
+            boolean empty = file.length() == 0;
+            out = new FileOutputStream(file, true);
+            if (empty)
+                writeHeader(out);
+        }
+        return out;
+    }
+
+    private static void writeHeader(FileOutputStream out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeInt(TaskBinaryCodec.FORMAT_VERSION);
+        out.write(bytes.toByteArray());
+    }
+}
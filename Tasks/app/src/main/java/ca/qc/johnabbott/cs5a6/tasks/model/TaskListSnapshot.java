@@ -0,0 +1,221 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * The sorted task list as it was last shown, saved to a file so the next launch can show it before the database
+ * is read.
+ *
+ * The file starts with a header of:
+ *   - a magic number, the codec version and the version of the database the tasks were read from,
+ *   - the length of the body and its CRC32.
+ * The body holds the pending, completed and completed without due date lists, in display order, each prefixed by
+ * its count. Tasks are list rows encoded by TaskBinaryCodec.
+ *
+ * The file is replaced as a whole: it is written to a temporary file renamed over the previous one. It is read
+ * through a memory map. A snapshot of another format or database version, or with a bad checksum, is ignored.
+ * Since it may still be older than the database, readers should check it against the database afterwards.
+ */
+public class TaskListSnapshot {
+
+    private static final String TAG = "TaskListSnapshot";
+    private static final int MAGIC = 0x54534E50; // "TSNP"
+    private static final int HEADER_SIZE = 20;
+
+    private final List<Task> pendingTasks;
+    private final List<Task> completedTasks;
+    private final List<Task> completedTasksNoDue;
+
+    /**
+     * @param pendingTasks
+     * @param completedTasks completed tasks with a due date.
+     * @param completedTasksNoDue completed tasks without a due date.
+     */
+    public TaskListSnapshot(List<Task> pendingTasks, List<Task> completedTasks, List<Task> completedTasksNoDue) {
+        this.pendingTasks = pendingTasks;
+        this.completedTasks = completedTasks;
+        this.completedTasksNoDue = completedTasksNoDue;
+    }
+
+    public List<Task> getPendingTasks() {
+        return pendingTasks;
+    }
+
+    public List<Task> getCompletedTasks() {
+        return completedTasks;
+    }
+
+    public List<Task> getCompletedTasksNoDue() {
+        return completedTasksNoDue;
+    }
+
+    /**
+     * Check if another snapshot shows the same list: the same tasks in the same order, with the same displayed
+     * fields. Urgencies are only compared through the order they give.
+     * @param other
+     * @return true if both lists display the same.
+     */
+    public boolean displaysSameAs(TaskListSnapshot other) {
+        return displaySame(pendingTasks, other.pendingTasks)
+                && displaySame(completedTasks, other.completedTasks)
+                && displaySame(completedTasksNoDue, other.completedTasksNoDue);
+    }
+
+    /**
+     * Write the snapshot, replacing the previous one.
+     * @param file
+     * @param databaseVersion the version of the database the tasks were read from.
+     * @throws IOException
+     */
+    public void write(File file, int databaseVersion) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+        DataOutputStream data = new DataOutputStream(body);
+        writeList(data, pendingTasks);
+        writeList(data, completedTasks);
+        writeList(data, completedTasksNoDue);
+
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(TaskBinaryCodec.FORMAT_VERSION);
+            header.writeInt(databaseVersion);
+            header.writeInt(body.size());
+            header.writeInt((int) crc.getValue());
+            body.writeTo(out);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file))
+            throw new IOException("Cannot replace " + file);
+    }
+
+    /**
+     * Read a snapshot.
+     * @param file
+     * @param databaseVersion the version of the current database.
+     * @return the snapshot, or null if there is none or it cannot be used.
+     */
+    public static TaskListSnapshot read(File file, int databaseVersion) {
+        if (!file.exists())
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE)
+                throw new IOException("Truncated header");
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != TaskBinaryCodec.FORMAT_VERSION)
+                throw new IOException("Unknown format");
+            if (buffer.getInt() != databaseVersion)
+                return null;
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length != buffer.remaining())
+                throw new IOException("Invalid body length " + length);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice());
+            if ((int) crc.getValue() != checksum)
+                throw new IOException("Checksum mismatch");
+
+            DataInputStream data = new DataInputStream(new ByteBufferInputStream(buffer));
+            List<Task> pendingTasks = readList(data);
+            List<Task> completedTasks = readList(data);
+            List<Task> completedTasksNoDue = readList(data);
+            return new TaskListSnapshot(pendingTasks, completedTasks, completedTasksNoDue);
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring snapshot " + file + ".", e);
+            return null;
+        }
+    }
+
+    private static void writeList(DataOutputStream out, List<Task> tasks) throws IOException {
+        out.writeInt(tasks.size());
+        for (Task task : tasks)
+            TaskBinaryCodec.write(out, listRow(task));
+    }
+
+    // Only what readAllListRows reads: not the dates or the annotations of a task opened in the editor.
+    private static Task listRow(Task task) {
+        return new Task(task.getId(), task.getUuid())
+                .setDescription(task.getDescription())
+                .setStatus(task.getStatus())
+                .setPriority(task.getPriority())
+                .setDue(task.getDue())
+                .setUrgency(task.getUrgency())
+                .setTags(task.getTags())
+                .setDetailsLoaded(false);
+    }
+
+    private static List<Task> readList(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Invalid task count " + count);
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            tasks.add(TaskBinaryCodec.read(in).clearDirtyFields(Task.ALL_FIELDS));
+        return tasks;
+    }
+
+    private static boolean displaySame(List<Task> tasks, List<Task> others) {
+        if (tasks.size() != others.size())
+            return false;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            Task other = others.get(i);
+            if (!task.getUuid().equals(other.getUuid())
+                    || !Objects.equals(task.getId(), other.getId())
+                    || !Objects.equals(task.getDescription(), other.getDescription())
+                    || task.getStatus() != other.getStatus()
+                    || task.getPriority() != other.getPriority()
+                    || !Objects.equals(task.getDue(), other.getDue()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the mapped file without copying it.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Offsets of the live task records of a TaskLogRepository log, by id, and ids by UUID.
+ *
+ * The index is a base, memory-mapped from a file written at close or after a compaction, and a delta of the changes
+ * replayed or written since. Opening a log maps the base and only replays the records after it.
+ *
+ * Index file layout, big-endian:
+ *   - header: magic "TIDX", version, log generation, log length covered, next id, garbage records, entry count.
+ *   - ids: (id, offset) pairs sorted by id.
+ *   - UUIDs: (most, least significant bits, id) triples sorted by UUID bits, signed.
+ *
+ * Not thread-safe: the repository guards it.
+ */
+final class TaskLogIndex {
+
+    // Offset or id of an entry that is not in the index.
+    static final long ABSENT = -1;
+
+    private static final int MAGIC = 0x54494458;  // "TIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+    private static final int ID_ENTRY_SIZE = 16;
+    private static final int UUID_ENTRY_SIZE = 24;
+
+    // Orders UUIDs the way the UUID section is sorted.
+    private static final Comparator<UUID> UUID_ORDER = (a, b) -> {
+        int compare = Long.compare(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return compare != 0 ? compare : Long.compare(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    private final long generation;
+    private final long baseLogLength;
+
+    // mapped base, null if there is none.
+    private final ByteBuffer base;
+    private final int baseCount;
+
+    // changes since the base: ABSENT values are deletions of base entries.
+    private final NavigableMap<Long, Long> offsets = new TreeMap<>();
+    private final Map<UUID, Long> ids = new HashMap<>();
+
+    private int size;
+    private long nextId;
+    private long garbage;
+
+    // undo records of the current transaction, null outside of one.
+    private List<Runnable> undo;
+
+    private TaskLogIndex(long generation, long baseLogLength, ByteBuffer base, int baseCount, long nextId, long garbage) {
+        this.generation = generation;
+        this.baseLogLength = baseLogLength;
+        this.base = base;
+        this.baseCount = baseCount;
+        this.nextId = nextId;
+        this.garbage = garbage;
+        size = baseCount;
+    }
+
+    /**
+     * An empty index, for a log replayed from its start.
+     * @param generation the generation of the log.
+     * @param logLength the offset of the first record of the log.
+     * @return the index.
+     */
+    static TaskLogIndex empty(long generation, long logLength) {
+        return new TaskLogIndex(generation, logLength, null, 0, 1, 0);
+    }
+
+    /**
+     * Map an index file.
+     * @param file
+     * @param generation the generation of the log the index must cover.
+     * @param logLength the length of the log: the index cannot cover more.
+     * @return the index, or null if the file does not exist or does not match the log.
+     * @throws IOException
+     */
+    static TaskLogIndex map(File file, long generation, long logLength) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE)
+            return null;
+
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != generation)
+            return null;
+        long baseLogLength = buffer.getLong(16);
+        long nextId = buffer.getLong(24);
+        long garbage = buffer.getLong(32);
+        int count = buffer.getInt(40);
+        if (baseLogLength > logLength || count < 0
+                || buffer.capacity() != HEADER_SIZE + (long) count * (ID_ENTRY_SIZE + UUID_ENTRY_SIZE))
+            return null;
+        return new TaskLogIndex(generation, baseLogLength, buffer, count, nextId, garbage);
+    }
+
+    /**
+     * Write the entries of the index to a file, as the base of a log of the same generation.
+     * @param file
+     * @param logLength the length of the log the index covers.
+     * @throws IOException
+     */
+    void write(File file, long logLength) throws IOException {
+        long[] liveIds = new long[size];
+        long[] liveOffsets = new long[size];
+        int count = 0;
+        for (Iterator<long[]> entries = entries(null, false); entries.hasNext(); count++) {
+            long[] entry = entries.next();
+            liveIds[count] = entry[0];
+            liveOffsets[count] = entry[1];
+        }
+
+        List<UUID> uuids = new ArrayList<>(size);
+        List<Long> uuidIds = new ArrayList<>(size);
+        for (int i = 0; i < baseCount; i++) {
+            UUID uuid = baseUuid(i);
+            if (!ids.containsKey(uuid)) {
+                uuids.add(uuid);
+                uuidIds.add(base.getLong(uuidPosition(i) + 16));
+            }
+        }
+        for (Map.Entry<UUID, Long> entry : ids.entrySet()) {
+            if (entry.getValue() != ABSENT) {
+                uuids.add(entry.getKey());
+                uuidIds.add(entry.getValue());
+            }
+        }
+        Integer[] order = new Integer[uuids.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> UUID_ORDER.compare(uuids.get(a), uuids.get(b)));
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * (ID_ENTRY_SIZE + UUID_ENTRY_SIZE));
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(generation).putLong(logLength)
+                .putLong(nextId).putLong(garbage).putInt(count).putInt(0);
+        for (int i = 0; i < count; i++)
+            buffer.putLong(liveIds[i]).putLong(liveOffsets[i]);
+        for (int i : order)
+            buffer.putLong(uuids.get(i).getMostSignificantBits()).putLong(uuids.get(i).getLeastSignificantBits())
+                    .putLong(uuidIds.get(i));
+        buffer.flip();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the length of the log covered by the mapped base: records after it must be replayed.
+     */
+    long getBaseLogLength() {
+        return baseLogLength;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getNextId() {
+        return nextId;
+    }
+
+    long getGarbage() {
+        return garbage;
+    }
+
+    /**
+     * @param id
+     * @return the log offset of the live record of a task, or ABSENT.
+     */
+    long offsetOf(long id) {
+        Long offset = offsets.get(id);
+        if (offset != null)
+            return offset;
+        int position = searchId(id);
+        return position < 0 ? ABSENT : base.getLong(idPosition(position) + 8);
+    }
+
+    /**
+     * @param uuid
+     * @return the id of the live task with a UUID, or ABSENT.
+     */
+    long idOf(UUID uuid) {
+        Long id = ids.get(uuid);
+        if (id != null)
+            return id;
+        int position = searchUuid(uuid);
+        return position < 0 ? ABSENT : base.getLong(uuidPosition(position) + 16);
+    }
+
+    /**
+     * Record the live record of a task.
+     * @param id
+     * @param uuid
+     * @param offset
+     * @param previousUuid the UUID of the record it supersedes, or null if the task is new.
+     */
+    void put(long id, UUID uuid, long offset, UUID previousUuid) {
+        if (previousUuid == null) {
+            set(size + 1, garbage);
+        } else {
+            set(size, garbage + 1);
+            if (!previousUuid.equals(uuid))
+                putDelta(ids, previousUuid, ABSENT);
+        }
+        putDelta(offsets, id, offset);
+        putDelta(ids, uuid, id);
+        if (id >= nextId) {
+            long previousNextId = nextId;
+            nextId = id + 1;
+            if (undo != null)
+                undo.add(() -> nextId = previousNextId);
+        }
+    }
+
+    /**
+     * Record the deletion of a task: its record and the deletion record are both garbage.
+     * @param id
+     * @param uuid
+     */
+    void remove(long id, UUID uuid) {
+        set(size - 1, garbage + 2);
+        putDelta(offsets, id, ABSENT);
+        putDelta(ids, uuid, ABSENT);
+    }
+
+    /**
+     * Allocate the id of a new task.
+     * @return the id.
+     */
+    long allocateId() {
+        long id = nextId++;
+        if (undo != null)
+            undo.add(() -> nextId = id);
+        return id;
+    }
+
+    /**
+     * Start recording changes, to roll them back if the transaction fails.
+     */
+    void begin() {
+        undo = new ArrayList<>();
+    }
+
+    /**
+     * Keep the changes since `begin()`.
+     */
+    void commit() {
+        undo = null;
+    }
+
+    /**
+     * Undo the changes since `begin()`.
+     */
+    void rollback() {
+        for (int i = undo.size() - 1; i >= 0; i--)
+            undo.get(i).run();
+        undo = null;
+    }
+
+    /**
+     * Iterate over the live (id, offset) entries in id order.
+     * @param afterId only the entries after this id, in the order of iteration, or null for all.
+     * @param descending
+     * @return the entries, as arrays of two longs.
+     */
+    Iterator<long[]> entries(Long afterId, boolean descending) {
+        NavigableMap<Long, Long> delta = descending ? offsets.descendingMap() : offsets;
+        if (afterId != null)
+            delta = delta.tailMap(afterId, false);
+        Iterator<Map.Entry<Long, Long>> deltaEntries = delta.entrySet().iterator();
+
+        int start;
+        if (afterId == null) {
+            start = descending ? baseCount - 1 : 0;
+        } else {
+            int position = searchId(afterId);
+            int insertion = position >= 0 ? position : -position - 1;
+            start = descending ? insertion - 1 : (position >= 0 ? position + 1 : insertion);
+        }
+        int step = descending ? -1 : 1;
+
+        return new Iterator<long[]>() {
+            private int position = start;
+            private Map.Entry<Long, Long> deltaEntry = nextDelta();
+            private long[] next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public long[] next() {
+                long[] entry = next;
+                next = advance();
+                return entry;
+            }
+
+            private Map.Entry<Long, Long> nextDelta() {
+                return deltaEntries.hasNext() ? deltaEntries.next() : null;
+            }
+
+            // merge the sorted base and delta: the delta overrides base entries with the same id.
+            private long[] advance() {
+                while (true) {
+                    boolean baseLeft = position >= 0 && position < baseCount;
+                    long baseId = baseLeft ? base.getLong(idPosition(position)) : 0;
+                    if (deltaEntry != null && (!baseLeft || Long.compare(deltaEntry.getKey(), baseId) * step <= 0)) {
+                        Map.Entry<Long, Long> entry = deltaEntry;
+                        deltaEntry = nextDelta();
+                        if (baseLeft && entry.getKey() == baseId)
+                            position += step;
+                        if (entry.getValue() != ABSENT)
+                            return new long[] { entry.getKey(), entry.getValue() };
+                    } else if (baseLeft) {
+                        long offset = base.getLong(idPosition(position) + 8);
+                        position += step;
+                        return new long[] { baseId, offset };
+                    } else {
+                        return null;
+                    }
+                }
+            }
+        };
+    }
+
+    private void set(int newSize, long newGarbage) {
+        int previousSize = size;
+        long previousGarbage = garbage;
+        size = newSize;
+        garbage = newGarbage;
+        if (undo != null)
+            undo.add(() -> {
+                size = previousSize;
+                garbage = previousGarbage;
+            });
+    }
+
+    private <K> void putDelta(Map<K, Long> delta, K key, long value) {
+        Long previous = delta.put(key, value);
+        if (undo != null)
+            undo.add(() -> {
+                if (previous == null)
+                    delta.remove(key);
+                else
+                    delta.put(key, previous);
+            });
+    }
+
+    private static int idPosition(int index) {
+        return HEADER_SIZE + index * ID_ENTRY_SIZE;
+    }
+
+    private int uuidPosition(int index) {
+        return HEADER_SIZE + baseCount * ID_ENTRY_SIZE + index * UUID_ENTRY_SIZE;
+    }
+
+    private UUID baseUuid(int index) {
+        return new UUID(base.getLong(uuidPosition(index)), base.getLong(uuidPosition(index) + 8));
+    }
+
+    // index in the base, or -(insertion point) - 1, like Arrays.binarySearch.
+    private int searchId(long id) {
+        int low = 0;
+        int high = baseCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = base.getLong(idPosition(mid));
+            if (midId < id)
+                low = mid + 1;
+            else if (midId > id)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    private int searchUuid(UUID uuid) {
+        int low = 0;
+        int high = baseCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = UUID_ORDER.compare(baseUuid(mid), uuid);
+            if (compare < 0)
+                low = mid + 1;
+            else if (compare > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,623 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.CRUDRepository;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Order;
+
+/**
+ * Tasks stored in an append-only log instead of an SQLite table: every write is a sequential append, and superseded
+ * records are reclaimed by a background compaction.
+ *
+ *   - each transaction is appended as a single frame, so it is either replayed whole or not at all.
+ *   - records are tasks in TaskBinaryCodec encoding, with their tags and, if loaded, their annotations.
+ *   - the index of live records is mapped from a file written at close and after compactions, see TaskLogIndex:
+ *     opening only replays the frames written after it.
+ *   - pages can only be ordered by id.
+ *
+ * Log file layout, big-endian:
+ *   - header: magic "TLOG", version, generation. Compaction writes a new log with the next generation.
+ *   - frames: length, CRC32 of the operations, then the operations.
+ *   - operation: type, length of the rest, task id, UUID bits, then the encoded task for a save.
+ *
+ * Appends are not synced: like the database in WAL mode with synchronous NORMAL, the last transactions can be lost on
+ * power failure, but the log is never left corrupt. `close()` syncs.
+ */
+public class TaskLogRepository implements CRUDRepository<Long, Task>, Closeable {
+
+    private static final String TAG = "TaskLogRepository";
+
+    public static final String LOG_FILE_NAME = "tasks.log";
+    public static final String INDEX_FILE_NAME = "tasks.idx";
+
+    private static final int MAGIC = 0x544C4F47;  // "TLOG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private static final int FRAME_HEADER_SIZE = 8;
+    // type, length, id, UUID.
+    private static final int OPERATION_HEADER_SIZE = 29;
+
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+
+    // Compact once superseded records outnumber live ones, and there are at least this many.
+    private static final long COMPACTION_MIN_GARBAGE = 1000;
+
+    // Records copied per frame by compaction.
+    private static final int COMPACTION_FRAME_RECORDS = 256;
+
+    private final File directory;
+    private final File logFile;
+    private final File indexFile;
+    private final ExecutorService compactor;
+
+    // guarded by this.
+    private FileChannel log;
+    private long logLength;
+    private TaskLogIndex index;
+    private boolean compactionScheduled;
+
+    // operations of the current transaction, appended as one frame when it commits. Null once a block failed.
+    private FrameBuffer frame;
+    private int transactionDepth;
+
+    /**
+     * Open the log in a directory, creating it if needed.
+     * @param directory
+     * @throws DatabaseException
+     */
+    public TaskLogRepository(File directory) throws DatabaseException {
+        this.directory = directory;
+        logFile = new File(directory, LOG_FILE_NAME);
+        indexFile = new File(directory, INDEX_FILE_NAME);
+        compactor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, TAG));
+        try {
+            open();
+        } catch (IOException e) {
+            compactor.shutdown();
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * @return the number of tasks.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Read a task by UUID.
+     * @param uuid
+     * @return the task, or null if there is none with that UUID.
+     * @throws DatabaseException
+     */
+    public synchronized Task readByUuid(UUID uuid) throws DatabaseException {
+        long id = index.idOf(uuid);
+        return id == TaskLogIndex.ABSENT ? null : readRecord(index.offsetOf(id));
+    }
+
+    /* CRUD Operations */
+
+    @Override
+    public Long create(Task element) throws DatabaseException {
+        return inTransaction(() -> {
+            if (index.idOf(element.getUuid()) != TaskLogIndex.ABSENT)
+                throw new DatabaseException("Operation create: a task with UUID " + element.getUuid() + " exists.");
+            element.setId(index.allocateId());
+            append(SAVE, element, null);
+            return element.getId();
+        });
+    }
+
+    @Override
+    public synchronized Task read(Long id) throws DatabaseException {
+        long offset = index.offsetOf(id);
+        if (offset == TaskLogIndex.ABSENT)
+            throw new DatabaseException("Operation read(" + id + "): no element with that id");
+        return readRecord(offset);
+    }
+
+    @Override
+    public synchronized List<Task> readAll() throws DatabaseException {
+        List<Task> tasks = new ArrayList<>(index.size());
+        for (Iterator<long[]> entries = index.entries(null, false); entries.hasNext(); )
+            tasks.add(readRecord(entries.next()[1]));
+        return tasks;
+    }
+
+    @Override
+    public synchronized List<Task> readPage(Long afterKey, int limit, Order orderBy) throws DatabaseException {
+        if (orderBy != null && !orderBy.getColumn().equals("_id"))
+            throw new DatabaseException("The task log can only be paged by id, not by " + orderBy.getColumn());
+
+        List<Task> tasks = new ArrayList<>(Math.min(limit, index.size()));
+        Iterator<long[]> entries = index.entries(afterKey, orderBy != null && orderBy.isDescending());
+        while (tasks.size() < limit && entries.hasNext())
+            tasks.add(readRecord(entries.next()[1]));
+        return tasks;
+    }
+
+    @Override
+    public boolean update(Task element) throws DatabaseException {
+        return inTransaction(() -> updateRecord(element));
+    }
+
+    @Override
+    public boolean delete(Task element) throws DatabaseException {
+        return inTransaction(() -> deleteRecord(element));
+    }
+
+    /* Bulk Operations
+     *
+     *   - each bulk operation is a single transaction, appended as one frame.
+     * */
+
+    @Override
+    public List<Long> createAll(Collection<Task> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            List<Long> ids = new ArrayList<>(elements.size());
+            for (Task element : elements)
+                ids.add(create(element));
+            return ids;
+        });
+    }
+
+    @Override
+    public List<Boolean> updateAll(Collection<Task> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            List<Boolean> results = new ArrayList<>(elements.size());
+            for (Task element : elements)
+                results.add(updateRecord(element));
+            return results;
+        });
+    }
+
+    @Override
+    public List<Boolean> deleteAll(Collection<Task> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            List<Boolean> results = new ArrayList<>(elements.size());
+            for (Task element : elements)
+                results.add(deleteRecord(element));
+            return results;
+        });
+    }
+
+    /**
+     * Run a block as a single unit: its writes are appended as one frame when the outermost block completes, and
+     * dropped if any block fails. Reads in the block see its writes.
+     */
+    @Override
+    public synchronized <R> R inTransaction(Transaction<R> transaction) throws DatabaseException {
+        boolean outermost = transactionDepth == 0;
+        if (outermost) {
+            frame = new FrameBuffer();
+            index.begin();
+        }
+        transactionDepth++;
+        boolean successful = false;
+        try {
+            R result = transaction.run();
+            successful = true;
+            return result;
+        } finally {
+            transactionDepth--;
+            if (outermost)
+                endTransaction(successful);
+            else if (!successful)
+                // the outermost block cannot keep the writes of a failed block: fail it too.
+                frame = null;
+        }
+    }
+
+    /**
+     * Wait for a running compaction, write the index for the next open, and close the log.
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                log.force(true);
+                index.write(indexFile, logLength);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write the index, the log will be replayed on open.", e);
+            }
+            try {
+                log.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close the log.", e);
+            }
+        }
+    }
+
+    private boolean updateRecord(Task element) throws DatabaseException {
+        if (element.getId() == null)
+            return false;
+        long offset = index.offsetOf(element.getId());
+        if (offset == TaskLogIndex.ABSENT)
+            return false;
+        long owner = index.idOf(element.getUuid());
+        if (owner != TaskLogIndex.ABSENT && owner != element.getId())
+            throw new DatabaseException("Operation update: a task with UUID " + element.getUuid() + " exists.");
+        append(SAVE, element, readUuid(offset));
+        return true;
+    }
+
+    private boolean deleteRecord(Task element) throws DatabaseException {
+        if (element.getId() == null)
+            return false;
+        long offset = index.offsetOf(element.getId());
+        if (offset == TaskLogIndex.ABSENT)
+            return false;
+        append(DELETE, element, readUuid(offset));
+        return true;
+    }
+
+    /*
+     * Add an operation to the frame of the current transaction, and to the index.
+     */
+    private void append(byte type, Task task, UUID previousUuid) throws DatabaseException {
+        if (frame == null)
+            throw new DatabaseException("Transaction on " + logFile.getName() + " already failed.");
+        if (type == SAVE && !task.isDetailsLoaded())
+            throw new DatabaseException("Operation save: task " + task.getId() + " is a list row, not a whole task.");
+
+        long offset = logLength + FRAME_HEADER_SIZE + frame.size();
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            if (type == SAVE)
+                TaskBinaryCodec.write(new DataOutputStream(payload), task);
+
+            DataOutputStream out = new DataOutputStream(frame);
+            out.writeByte(type);
+            out.writeInt(OPERATION_HEADER_SIZE - 5 + payload.size());
+            out.writeLong(task.getId());
+            out.writeLong(task.getUuid().getMostSignificantBits());
+            out.writeLong(task.getUuid().getLeastSignificantBits());
+            payload.writeTo(out);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+
+        if (type == SAVE)
+            index.put(task.getId(), task.getUuid(), offset, previousUuid);
+        else
+            index.remove(task.getId(), previousUuid);
+    }
+
+    private void endTransaction(boolean successful) throws DatabaseException {
+        FrameBuffer operations = frame;
+        frame = null;
+        if (!successful || operations == null) {
+            index.rollback();
+            if (successful)
+                throw new DatabaseException("Transaction on " + logFile.getName() + " rolled back: a nested block failed.");
+            return;
+        }
+        if (operations.size() == 0) {
+            index.commit();
+            return;
+        }
+
+        byte[] bytes = operations.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + bytes.length);
+        buffer.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+        try {
+            // one write per frame: a crash leaves either the whole frame or a torn one that replay drops.
+            long position = logLength;
+            while (buffer.hasRemaining())
+                position += log.write(buffer, position);
+        } catch (IOException e) {
+            index.rollback();
+            throw new DatabaseException(e);
+        }
+        logLength += buffer.limit();
+        index.commit();
+        scheduleCompactionIfNeeded();
+    }
+
+    private Task readRecord(long offset) throws DatabaseException {
+        try {
+            ByteBuffer header = read(offset, OPERATION_HEADER_SIZE);
+            byte type = header.get(0);
+            int length = header.getInt(1);
+            if (type != SAVE)
+                throw new DatabaseException("No task record at offset " + offset);
+            byte[] payload = new byte[length - (OPERATION_HEADER_SIZE - 5)];
+            readFully(offset + OPERATION_HEADER_SIZE, ByteBuffer.wrap(payload));
+            Task task = TaskBinaryCodec.read(new DataInputStream(new ByteArrayInputStream(payload)));
+            return task.clearDirtyFields(Task.ALL_FIELDS);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    private UUID readUuid(long offset) throws DatabaseException {
+        try {
+            ByteBuffer header = read(offset, OPERATION_HEADER_SIZE);
+            return new UUID(header.getLong(13), header.getLong(21));
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /*
+     * Read from the log, or from the frame of the current transaction for the operations it added.
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(offset, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(long offset, ByteBuffer buffer) throws IOException {
+        if (offset < logLength)
+            readFully(log, offset, buffer);
+        else if (frame != null)
+            frame.read((int) (offset - logLength - FRAME_HEADER_SIZE), buffer);
+        else
+            throw new IOException("Record at offset " + offset + " belongs to a failed transaction.");
+    }
+
+    private static void readFully(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0)
+                throw new IOException("Unexpected end of log at offset " + offset);
+            offset += read;
+        }
+    }
+
+    /* Opening and replay */
+
+    private void open() throws IOException {
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+        log = new RandomAccessFile(logFile, "rw").getChannel();
+
+        long generation;
+        if (log.size() < HEADER_SIZE) {
+            generation = 1;
+            writeHeader(log, generation);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            log.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                log.close();
+                throw new IOException(logFile + " is not a task log.");
+            }
+            generation = header.getLong(8);
+        }
+        logLength = log.size();
+
+        index = TaskLogIndex.map(indexFile, generation, logLength);
+        if (index == null)
+            index = TaskLogIndex.empty(generation, HEADER_SIZE);
+        replay(index.getBaseLogLength());
+    }
+
+    /*
+     * Apply the frames from an offset to the end of the log. A torn or corrupt frame ends the log: it is truncated.
+     */
+    private void replay(long offset) throws IOException {
+        int frames = 0;
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        while (offset + FRAME_HEADER_SIZE <= logLength) {
+            header.clear();
+            log.read(header, offset);
+            int length = header.getInt(0);
+            if (length <= 0 || offset + FRAME_HEADER_SIZE + length > logLength)
+                break;
+            byte[] operations = new byte[length];
+            readFully(log, offset + FRAME_HEADER_SIZE, ByteBuffer.wrap(operations));
+            CRC32 crc = new CRC32();
+            crc.update(operations, 0, length);
+            if ((int) crc.getValue() != header.getInt(4))
+                break;
+
+            applyFrame(ByteBuffer.wrap(operations), offset + FRAME_HEADER_SIZE);
+            offset += FRAME_HEADER_SIZE + length;
+            frames++;
+        }
+        if (offset < logLength) {
+            Log.w(TAG, "Dropping " + (logLength - offset) + " bytes of torn frames at the end of the log.");
+            log.truncate(offset);
+            logLength = offset;
+        }
+        if (frames > 0)
+            Log.i(TAG, "Replayed " + frames + " log frames.");
+    }
+
+    private void applyFrame(ByteBuffer operations, long position) throws IOException {
+        while (operations.hasRemaining()) {
+            int start = operations.position();
+            byte type = operations.get();
+            int length = operations.getInt();
+            long id = operations.getLong();
+            UUID uuid = new UUID(operations.getLong(), operations.getLong());
+            operations.position(start + 5 + length);
+
+            long previous = index.offsetOf(id);
+            UUID previousUuid = previous == TaskLogIndex.ABSENT ? null : readUuidAt(previous);
+            if (type == SAVE)
+                index.put(id, uuid, position + start, previousUuid);
+            else if (previousUuid != null)
+                index.remove(id, previousUuid);
+        }
+    }
+
+    private UUID readUuidAt(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(OPERATION_HEADER_SIZE);
+        readFully(log, offset, header);
+        return new UUID(header.getLong(13), header.getLong(21));
+    }
+
+    private static void writeHeader(FileChannel channel, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+        channel.truncate(0);
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+    }
+
+    /* Compaction
+     *
+     *   - the live records are copied to a new log of the next generation without holding the lock: the old log is
+     *     only ever appended to, so their offsets stay valid.
+     *   - frames appended meanwhile are then copied as is under the lock, and the new log and its index replace the
+     *     old ones. A crash before the log is renamed keeps the old log; after, the old index no longer matches the
+     *     generation and the new log is replayed in full.
+     * */
+
+    private void scheduleCompactionIfNeeded() {
+        if (compactionScheduled || index.getGarbage() < COMPACTION_MIN_GARBAGE || index.getGarbage() <= index.size())
+            return;
+        compactionScheduled = true;
+        try {
+            compactor.execute(this::compact);
+        } catch (RuntimeException e) {
+            // closing: the next open compacts.
+            compactionScheduled = false;
+        }
+    }
+
+    private void compact() {
+        File newLogFile = new File(directory, LOG_FILE_NAME + ".compact");
+        File newIndexFile = new File(directory, INDEX_FILE_NAME + ".compact");
+        try {
+            List<long[]> live = new ArrayList<>();
+            long copiedLength;
+            long generation;
+            synchronized (this) {
+                for (Iterator<long[]> entries = index.entries(null, false); entries.hasNext(); )
+                    live.add(entries.next());
+                copiedLength = logLength;
+                generation = index.getGeneration() + 1;
+            }
+
+            TaskLogIndex newIndex = TaskLogIndex.empty(generation, HEADER_SIZE);
+            try (FileChannel newLog = new RandomAccessFile(newLogFile, "rw").getChannel()) {
+                writeHeader(newLog, generation);
+                long newLength = HEADER_SIZE;
+                for (int first = 0; first < live.size(); first += COMPACTION_FRAME_RECORDS) {
+                    newLength += copyRecords(live.subList(first, Math.min(first + COMPACTION_FRAME_RECORDS, live.size())),
+                            newLog, newLength, newIndex);
+                }
+
+                synchronized (this) {
+                    // frames appended since the snapshot: replayed against the new index on reopen.
+                    long tailLength = logLength - copiedLength;
+                    long transferred = 0;
+                    while (transferred < tailLength)
+                        transferred += log.transferTo(copiedLength + transferred, tailLength - transferred,
+                                newLog.position(newLength + transferred));
+                    newLog.force(true);
+                    newIndex.write(newIndexFile, newLength);
+
+                    log.close();
+                    if (!newLogFile.renameTo(logFile) || !newIndexFile.renameTo(indexFile))
+                        throw new IOException("Could not replace the log with its compaction.");
+                    open();
+                    Log.i(TAG, "Compacted the log to " + index.size() + " tasks.");
+                }
+            }
+        } catch (IOException | DatabaseException e) {
+            Log.e(TAG, "Compaction failed.", e);
+            newLogFile.delete();
+            newIndexFile.delete();
+            synchronized (this) {
+                // the old log stays in use, reopen it if it was closed.
+                try {
+                    if (!log.isOpen())
+                        open();
+                } catch (IOException reopen) {
+                    Log.e(TAG, "Could not reopen the log.", reopen);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                compactionScheduled = false;
+            }
+        }
+    }
+
+    /*
+     * Copy live records to a frame of the new log.
+     */
+    private long copyRecords(List<long[]> entries, FileChannel newLog, long position, TaskLogIndex newIndex)
+            throws IOException, DatabaseException {
+        ByteArrayOutputStream operations = new ByteArrayOutputStream();
+        for (long[] entry : entries) {
+            ByteBuffer header = ByteBuffer.allocate(OPERATION_HEADER_SIZE);
+            readFullyUnlocked(entry[1], header);
+            header.flip();
+            int length = header.getInt(1);
+            ByteBuffer record = ByteBuffer.allocate(5 + length);
+            record.put(header);
+            readFullyUnlocked(entry[1] + OPERATION_HEADER_SIZE, record);
+
+            long offset = position + FRAME_HEADER_SIZE + operations.size();
+            operations.write(record.array(), 0, record.capacity());
+            newIndex.put(entry[0], new UUID(record.getLong(13), record.getLong(21)), offset, null);
+        }
+
+        byte[] bytes = operations.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + bytes.length);
+        buffer.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+        long written = 0;
+        while (buffer.hasRemaining())
+            written += newLog.write(buffer, position + written);
+        return written;
+    }
+
+    // positional reads of the committed log, safe without the lock: committed bytes never change.
+    private void readFullyUnlocked(long offset, ByteBuffer buffer) throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            channel = log;
+        }
+        readFully(channel, offset, buffer);
+    }
+
+    /*
+     * The operations of a transaction, readable before they are appended.
+     */
+    private static class FrameBuffer extends ByteArrayOutputStream {
+        private void read(int position, ByteBuffer buffer) {
+            buffer.put(buf, position, buffer.remaining());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+
+/**
+ * Periodic housekeeping of the tasks database, meant to run in the background once the task list is shown:
+ *
+ *   - completed and deleted tasks not modified for `archiveAge` are moved to the archive, a chunk per transaction,
+ *     so the task list only reads the tasks that matter.
+ *   - at most once per MAINTENANCE_INTERVAL, the database is analyzed and its free pages released. See
+ *     `TaskDatabaseHandler.maintain`. The first interval starts on the first run, not at the first launch of the
+ *     app. A database that still needs a full VACUUM gets it from TaskVacuumJobService, when the device is idle.
+ */
+public class TaskMaintenance {
+
+    private static final String TAG = "TaskMaintenance";
+
+    public static final long DEFAULT_ARCHIVE_AGE = TimeUnit.DAYS.toMillis(90);
+    public static final long MAINTENANCE_INTERVAL = TimeUnit.DAYS.toMillis(7);
+
+    public static final String PREFERENCES_NAME = "task_maintenance";
+    private static final String KEY_LAST_MAINTENANCE = "last_maintenance";
+
+    private final Context context;
+    private final TaskDatabaseHandler dbHandler;
+    private final SharedPreferences preferences;
+    private final long archiveAge;
+
+    /**
+     * @param context used to schedule the full VACUUM.
+     * @param dbHandler
+     * @param preferences where the date of the last maintenance is kept.
+     * @param archiveAge how long a task stays in the task list after it is completed or deleted, in millis.
+     */
+    public TaskMaintenance(Context context, TaskDatabaseHandler dbHandler, SharedPreferences preferences,
+                           long archiveAge) {
+        this.context = context;
+        this.dbHandler = dbHandler;
+        this.preferences = preferences;
+        this.archiveAge = archiveAge;
+    }
+
+    /**
+     * Archive old tasks, then maintain the database if it is due, and schedule the full VACUUM if it is needed.
+     * Does nothing while the data rewrite of an upgrade is not complete: it runs again on the next launch.
+     * @return the UUIDs of the archived tasks.
+     * @throws DatabaseException
+     */
+    public List<UUID> run() throws DatabaseException {
+        if (dbHandler.hasPendingMigrations()) {
+            Log.w(TAG, "Skipping maintenance: the upgrade of the database is not complete.");
+            return new ArrayList<>();
+        }
+
+        long now = System.currentTimeMillis();
+        List<UUID> archived = archiveCompleted(now);
+        maintainIfDue(now);
+        if (dbHandler.needsFullVacuum())
+            TaskVacuumJobService.schedule(context);
+        return archived;
+    }
+
+    /**
+     * Move the completed and deleted tasks not modified for `archiveAge` to the archive. Each chunk is its own
+     * transaction, which keeps each commit short. Run from the writer thread, as the app does, the queued writes
+     * still wait for the last chunk: they are flushed before and after the whole run, not between chunks.
+     * @param now the current date, in epoch millis.
+     * @return the UUIDs of the archived tasks.
+     * @throws DatabaseException
+     */
+    public List<UUID> archiveCompleted(long now) throws DatabaseException {
+        List<UUID> archived = new ArrayList<>();
+        List<UUID> chunk;
+        do {
+            chunk = dbHandler.getTaskTable().archiveChunk(now - archiveAge);
+            archived.addAll(chunk);
+        } while (chunk.size() == TaskTable.ARCHIVE_BATCH_SIZE);
+
+        if (!archived.isEmpty())
+            Log.i(TAG, "Archived " + archived.size() + " tasks.");
+        return archived;
+    }
+
+    /**
+     * Maintain the database if the last maintenance is older than MAINTENANCE_INTERVAL. The first call only starts
+     * the interval: the launch that follows an install or an upgrade is busy enough.
+     * @param now the current date, in epoch millis.
+     * @return true if the database was maintained.
+     */
+    public boolean maintainIfDue(long now) {
+        if (!preferences.contains(KEY_LAST_MAINTENANCE)) {
+            preferences.edit().putLong(KEY_LAST_MAINTENANCE, now).apply();
+            return false;
+        }
+        if (now - preferences.getLong(KEY_LAST_MAINTENANCE, now) < MAINTENANCE_INTERVAL)
+            return false;
+
+        long start = System.currentTimeMillis();
+        dbHandler.maintain();
+        Log.i(TAG, "Maintained the database in " + (System.currentTimeMillis() - start) + " ms.");
+
+        preferences.edit().putLong(KEY_LAST_MAINTENANCE, now).apply();
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Binder;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Column;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Row;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.RowCodec;
+
+/**
+ * The columns of a task row and their conversion, shared by the task table, its archive and the JDBC backend.
+ * Dates are stored as epoch millis, enums as codes and the UUID as 16 bytes. See TypeConvertUtils.
+ * Column n is the task field FIELD_* bit n - 1.
+ */
+public class TaskRowCodec implements RowCodec<Task> {
+
+    public static final TaskRowCodec INSTANCE = new TaskRowCodec();
+
+    // Number of columns after the id.
+    static final int COLUMN_COUNT = 8;
+
+    private TaskRowCodec() {}
+
+    @Override
+    public List<Column> getColumns() {
+        List<Column> columns = new ArrayList<>(COLUMN_COUNT);
+        columns.add(new Column(TaskTable.COLUMN_UUID, Column.Type.BLOB));
+        columns.add(new Column(TaskTable.COLUMN_DESCRIPTION, Column.Type.TEXT));
+        columns.add(new Column(TaskTable.COLUMN_STATUS, Column.Type.INTEGER));
+        columns.add(new Column(TaskTable.COLUMN_PRIORITY, Column.Type.INTEGER));
+        columns.add(new Column(TaskTable.COLUMN_ENTRY, Column.Type.INTEGER));
+        columns.add(new Column(TaskTable.COLUMN_MODIFIED, Column.Type.INTEGER));
+        columns.add(new Column(TaskTable.COLUMN_DUE, Column.Type.INTEGER));
+        columns.add(new Column(TaskTable.COLUMN_URGENCY, Column.Type.REAL));
+        return columns;
+    }
+
+    @Override
+    public Task read(Row row) throws DatabaseException {
+        // not new Task(): it would draw a random UUID only to replace it.
+        return new Task(row.getLong(0), TypeConvertUtils.bytesAsUuid(row.getBlob(1)))
+                .setDescription(row.getString(2))
+                .setStatus(TypeConvertUtils.intAsStatus(row.getInt(3)))
+                .setPriority(TypeConvertUtils.intAsPriority(row.getInt(4)))
+                .setEntry(getDate(row, 5))
+                .setModified(getDate(row, 6))
+                .setDue(getDate(row, 7))
+                .setUrgency(row.getDouble(8))
+                .clearDirtyFields(Task.ALL_FIELDS);
+    }
+
+    @Override
+    public void bindColumn(Binder binder, int parameter, int column, Task element) throws DatabaseException {
+        switch (column) {
+            case 1: binder.bindBlob(parameter, TypeConvertUtils.uuidAsBytes(element.getUuid())); break;
+            case 2: binder.bindString(parameter, element.getDescription()); break;
+            case 3: binder.bindLong(parameter, TypeConvertUtils.statusAsInt(element.getStatus())); break;
+            case 4: binder.bindLong(parameter, TypeConvertUtils.priorityAsInt(element.getPriority())); break;
+            case 5: bindDate(binder, parameter, element.getEntry()); break;
+            case 6: bindDate(binder, parameter, element.getModified()); break;
+            case 7: bindDate(binder, parameter, element.getDue()); break;
+            case 8: binder.bindDouble(parameter, element.getUrgency()); break;
+            default: throw new IllegalArgumentException("No column " + column);
+        }
+    }
+
+    @Override
+    public void bind(Binder binder, Task element) throws DatabaseException {
+        for (int column = 1; column <= COLUMN_COUNT; column++)
+            bindColumn(binder, column, column, element);
+    }
+
+    /*
+     * Bind a date as it is stored, for the statements of the task tables that bind a date outside of a row.
+     */
+    static void bindDate(Binder binder, int parameter, Date date) throws DatabaseException {
+        if (date == null)
+            binder.bindNull(parameter);
+        else
+            binder.bindLong(parameter, date.getTime());
+    }
+
+    private static Date getDate(Row row, int column) throws DatabaseException {
+        return row.isNull(column) ? null : TypeConvertUtils.longAsDate(row.getLong(column));
+    }
+}
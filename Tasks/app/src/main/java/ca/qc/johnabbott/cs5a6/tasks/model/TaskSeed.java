@@ -0,0 +1,73 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Source of the tasks a new database is seeded with.
+ */
+public interface TaskSeed {
+
+    /**
+     * Reads the tasks of a seed, one at a time.
+     */
+    interface Reader extends Closeable {
+
+        /**
+         * @return the number of tasks in the seed, -1 if unknown.
+         */
+        int size();
+
+        /**
+         * @return the next task, null after the last one.
+         * @throws IOException
+         */
+        Task next() throws IOException;
+    }
+
+    /**
+     * Reports how many tasks are seeded so far.
+     */
+    interface ProgressListener {
+
+        /**
+         * @param seeded the number of tasks inserted.
+         * @param total the number of tasks in the seed, -1 if unknown.
+         */
+        void onProgress(int seeded, int total);
+    }
+
+    /**
+     * Start reading the tasks.
+     * @return a reader, to close once done.
+     * @throws IOException
+     */
+    Reader open() throws IOException;
+
+    /**
+     * A seed of tasks already in memory.
+     * @param tasks
+     * @return the seed.
+     */
+    static TaskSeed of(List<Task> tasks) {
+        return () -> new Reader() {
+            private final Iterator<Task> iterator = tasks.iterator();
+
+            @Override
+            public int size() {
+                return tasks.size();
+            }
+
+            @Override
+            public Task next() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -2,16 +2,36 @@ package ca.qc.johnabbott.cs5a6.tasks.model;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Column;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.CursorRow;
 import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Index;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Query;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.StatementBinder;
 import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Table;
 
 public class TaskTable extends Table<Task> {
 
+    private static final String TAG = "TaskTable";
+
     public static final String TABLE_NAME = "task";
     public static final String COLUMN_UUID = "uuid";
     public static final String COLUMN_DESCRIPTION = "description";
@@ -35,6 +55,56 @@ public class TaskTable extends Table<Task> {
 //    public static final String COLUMN_DEPENDS = "depends";
     public static final String COLUMN_URGENCY = "urgency";
 
+    // Rows copied per chunk when rebuilding the table.
+    private static final int MIGRATION_BATCH_SIZE = 500;
+
+    // UUIDs per IN (...) list when reading several tasks by UUID.
+    private static final int UUID_BATCH_SIZE = 500;
+
+    // Columns of a task list row, in the order read by readAllListRows.
+    private static final String[] LIST_COLUMNS = {
+            "_id", COLUMN_UUID, COLUMN_DESCRIPTION, COLUMN_STATUS, COLUMN_PRIORITY, COLUMN_DUE, COLUMN_URGENCY };
+
+    // Columns of the task fields FIELD_UUID to FIELD_URGENCY: the columns after _id, in order.
+    private static final String[] FIELD_COLUMNS = {
+            COLUMN_UUID, COLUMN_DESCRIPTION, COLUMN_STATUS, COLUMN_PRIORITY,
+            COLUMN_ENTRY, COLUMN_MODIFIED, COLUMN_DUE, COLUMN_URGENCY };
+    private static final int COLUMN_FIELDS = (1 << FIELD_COLUMNS.length) - 1;
+
+    // Columns written together by a partial update: a set of dirty columns is written with the first shape that
+    // covers it, so only a few UPDATE statements are compiled and kept. The other columns of the shape are written
+    // with their unchanged values. Both shapes only have columns that a list row has.
+    private static final int LIST_ROW_FIELDS =
+            Task.FIELD_DESCRIPTION | Task.FIELD_STATUS | Task.FIELD_PRIORITY | Task.FIELD_DUE | Task.FIELD_URGENCY;
+    private static final int[] UPDATE_SHAPES = { LIST_ROW_FIELDS, LIST_ROW_FIELDS | Task.FIELD_MODIFIED };
+
+    // Tasks moved to the archive per transaction.
+    public static final int ARCHIVE_BATCH_SIZE = 500;
+
+    // Tasks seeded between progress reports.
+    private static final int SEED_PROGRESS_INTERVAL = 500;
+
+    // Tasks per transaction when upserting.
+    static final int UPSERT_BATCH_SIZE = 1000;
+
+    // Results of lookups by UUID that are not task ids.
+    private static final long NO_TASK = -1;
+    private static final long NOT_NEWER = -2;
+
+    // Full-text index of task descriptions, one document per task with the task id as docid.
+    public static final String SEARCH_TABLE_NAME = "task_fts";
+
+    // Child tables, keyed by task UUID.
+    private final TagTable tagTable;
+    private final AnnotationTable annotationTable;
+    private final ArchivedTaskTable archivedTaskTable;
+
+    // SQL of the update of each set of dirty columns, built on first use.
+    private final String[] updateDirtyStatements = new String[COLUMN_FIELDS + 1];
+
+    private TaskSeed seed = TaskData.getSeed();
+    private TaskSeed.ProgressListener progressListener;
+
 
     /**
      * Create a database table
@@ -43,14 +113,516 @@ public class TaskTable extends Table<Task> {
      */
     public TaskTable(SQLiteOpenHelper dbh) {
         super(dbh, TABLE_NAME);
-        addColumn(new Column(COLUMN_UUID, Column.Type.BLOB));
-        addColumn(new Column(COLUMN_DESCRIPTION, Column.Type.TEXT));
-        addColumn(new Column(COLUMN_STATUS, Column.Type.TEXT));
-        addColumn(new Column(COLUMN_PRIORITY, Column.Type.TEXT));
-        addColumn(new Column(COLUMN_ENTRY, Column.Type.TEXT));
-        addColumn(new Column(COLUMN_MODIFIED, Column.Type.TEXT));
-        addColumn(new Column(COLUMN_DUE, Column.Type.TEXT));
-        addColumn(new Column(COLUMN_URGENCY, Column.Type.REAL));
+        addTaskColumns(this);
+
+        // lookups by uuid, filtering by status and sorting by due date or urgency.
+        addIndex(new Index(COLUMN_UUID).unique());
+        addIndex(new Index(COLUMN_STATUS));
+        addIndex(new Index(COLUMN_DUE));
+        addIndex(new Index(COLUMN_STATUS, COLUMN_URGENCY));
+
+        tagTable = new TagTable(dbh);
+        annotationTable = new AnnotationTable(dbh);
+        archivedTaskTable = new ArchivedTaskTable(dbh, this);
+    }
+
+    /*
+     * The columns of a task, shared with the archive.
+     */
+    static void addTaskColumns(Table<Task> table) {
+        for (Column column : TaskRowCodec.INSTANCE.getColumns())
+            table.addColumn(column);
+    }
+
+    public TagTable getTagTable() {
+        return tagTable;
+    }
+
+    public AnnotationTable getAnnotationTable() {
+        return annotationTable;
+    }
+
+    public ArchivedTaskTable getArchivedTaskTable() {
+        return archivedTaskTable;
+    }
+
+    @Override
+    public void createTable(SQLiteDatabase database) throws DatabaseException {
+        // child tables first: the initial data has tags.
+        tagTable.createTable(database);
+        annotationTable.createTable(database);
+        archivedTaskTable.createTable(database);
+        super.createTable(database);
+        // after the initial data, which is indexed in bulk.
+        createSearchIndex(database);
+    }
+
+    /**
+     * Create the full-text index of task descriptions if needed, and index the existing tasks again.
+     * @param database
+     */
+    public void createSearchIndex(SQLiteDatabase database) {
+        database.execSQL(String.format("CREATE VIRTUAL TABLE IF NOT EXISTS %s USING fts4(%s);", SEARCH_TABLE_NAME, COLUMN_DESCRIPTION));
+        database.execSQL(String.format("DELETE FROM %s;", SEARCH_TABLE_NAME));
+        database.execSQL(String.format("INSERT INTO %1$s (docid, %2$s) SELECT _id, %2$s FROM %3$s;", SEARCH_TABLE_NAME, COLUMN_DESCRIPTION, getName()));
+    }
+
+    /**
+     * Merge the segments of the full-text index into one, which makes searches faster after many writes.
+     * @param database
+     */
+    public void optimizeSearchIndex(SQLiteDatabase database) {
+        database.execSQL(String.format("INSERT INTO %1$s (%1$s) VALUES ('optimize');", SEARCH_TABLE_NAME));
+    }
+
+    /**
+     * Search task descriptions for words starting with each word of the text.
+     * For example "gar rec" finds "Recycling and garbage".
+     * @param text the search text.
+     * @return the UUIDs of the matching tasks, most relevant first.
+     * @throws DatabaseException
+     */
+    public List<UUID> search(String text) throws DatabaseException {
+        // each word is a prefix query, all words must match. Lowercase words are never query operators.
+        StringBuilder match = new StringBuilder();
+        for (String word : searchWords(text)) {
+            if (match.length() > 0)
+                match.append(' ');
+            match.append(word).append('*');
+        }
+
+        List<UUID> uuids = new ArrayList<>();
+        if (match.length() == 0)
+            return uuids;
+
+        Map<UUID, Double> relevance = new HashMap<>();
+        SQLiteDatabase database = getDatabaseHandler().getReadableDatabase();
+        try {
+            Cursor cursor = database.rawQuery(
+                    String.format("SELECT t.%2$s, matchinfo(%1$s, 'pcx') FROM %1$s JOIN %3$s t ON t._id = %1$s.docid WHERE %1$s MATCH ? ORDER BY %1$s.docid;",
+                            SEARCH_TABLE_NAME, COLUMN_UUID, getName()),
+                    new String[] { match.toString() });
+            try {
+                while (cursor.moveToNext()) {
+                    UUID uuid = TypeConvertUtils.bytesAsUuid(cursor.getBlob(0));
+                    uuids.add(uuid);
+                    relevance.put(uuid, relevance(cursor.getBlob(1)));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+
+        // stable: equally relevant tasks stay in creation order.
+        uuids.sort((a, b) -> Double.compare(relevance.get(b), relevance.get(a)));
+        return uuids;
+    }
+
+    /**
+     * Check a description against a search text the same way as `search`, for tasks not yet in the database.
+     * @param description
+     * @param text the search text.
+     * @return true if every word of the text starts a word of the description.
+     */
+    public static boolean matchesSearch(String description, String text) {
+        List<String> words = searchWords(description == null ? "" : description);
+        for (String prefix : searchWords(text)) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found)
+                return false;
+        }
+        return true;
+    }
+
+    private static List<String> searchWords(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+"))
+            if (!word.isEmpty())
+                words.add(word);
+        return words;
+    }
+
+    /*
+     * Relevance of a match from its matchinfo 'pcx' blob: for each word, the share of all its hits that are in this
+     * task. Words that are rare in the other tasks count for more.
+     */
+    private static double relevance(byte[] matchinfo) {
+        ByteBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+        int phrases = info.getInt(0);
+        int columns = info.getInt(4);
+        double score = 0;
+        for (int i = 0; i < phrases * columns; i++) {
+            int hitsInRow = info.getInt(8 + i * 12);
+            int hitsInAllRows = info.getInt(12 + i * 12);
+            if (hitsInAllRows > 0)
+                score += (double) hitsInRow / hitsInAllRows;
+        }
+        return score;
+    }
+
+    private void indexDescription(SQLiteDatabase database, Task task) throws DatabaseException {
+        SQLiteStatement statement = getStatement(database,
+                String.format("INSERT INTO %s (docid, %s) VALUES (?, ?);", SEARCH_TABLE_NAME, COLUMN_DESCRIPTION));
+        synchronized (statement) {
+            try {
+                statement.bindLong(1, task.getId());
+                new StatementBinder(statement).bindString(2, task.getDescription());
+                statement.executeInsert();
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    private void unindexDescription(SQLiteDatabase database, Task task) throws DatabaseException {
+        SQLiteStatement statement = getStatement(database,
+                String.format("DELETE FROM %s WHERE docid = ?;", SEARCH_TABLE_NAME));
+        synchronized (statement) {
+            try {
+                statement.bindLong(1, task.getId());
+                statement.executeUpdateDelete();
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    @Override
+    public void closeStatements() {
+        tagTable.closeStatements();
+        annotationTable.closeStatements();
+        archivedTaskTable.closeStatements();
+        super.closeStatements();
+    }
+
+    /**
+     * Read the annotations of a task from the database, replacing its annotation list.
+     * Tasks are read without their annotations: this is only needed when the annotations are shown or edited.
+     * @param task
+     * @throws DatabaseException
+     */
+    public void loadAnnotations(Task task) throws DatabaseException {
+        task.setAnnotations(annotationTable.readByTaskUuid(task.getUuid()))
+                .clearDirtyFields(Task.FIELD_ANNOTATIONS);
+    }
+
+    /*
+     * Load the tags of a batch of tasks, with one query per UUID_BATCH_SIZE tasks.
+     */
+    @Override
+    protected void hydrate(List<Task> tasks) throws DatabaseException {
+        if (tasks.isEmpty())
+            return;
+
+        // an empty ArrayList does not allocate its array until a tag is added.
+        Map<UUID, Task> byUuid = new HashMap<>();
+        for (Task task : tasks) {
+            byUuid.put(task.getUuid(), task);
+            task.setTags(new ArrayList<>(0));
+        }
+
+        List<UUID> batch = new ArrayList<>(Math.min(byUuid.size(), UUID_BATCH_SIZE));
+        for (UUID uuid : byUuid.keySet()) {
+            batch.add(uuid);
+            if (batch.size() == UUID_BATCH_SIZE) {
+                addTags(byUuid, tagTable.readByTaskUuids(batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            addTags(byUuid, tagTable.readByTaskUuids(batch));
+
+        for (Task task : tasks)
+            task.clearDirtyFields(Task.FIELD_TAGS);
+    }
+
+    private static void addTags(Map<UUID, Task> byUuid, List<Tag> tags) {
+        for (Tag tag : tags) {
+            byUuid.get(tag.getTaskUuid()).getTags().add(tag.getName());
+        }
+    }
+
+    /**
+     * Move up to ARCHIVE_BATCH_SIZE completed or deleted tasks last modified before a date to the archive, in one
+     * transaction. Their tags and annotations are kept, they are removed from the search index.
+     * Refused while the copy of an upgrade is not complete, like any other write of tasks.
+     * @param before the date, in epoch millis.
+     * @return the UUIDs of the archived tasks: fewer than ARCHIVE_BATCH_SIZE once there are none left to archive.
+     * @throws DatabaseException
+     */
+    public List<UUID> archiveChunk(long before) throws DatabaseException {
+        return inTransaction(() -> {
+            SQLiteDatabase database = getDatabaseHandler().getWritableDatabase();
+            checkNotMigrating(database);
+            StringBuilder ids = new StringBuilder();
+            List<UUID> uuids = new ArrayList<>();
+            Cursor cursor = database.rawQuery(String.format(
+                    "SELECT _id, %s FROM %s WHERE %s IN (%d, %d) AND IFNULL(%s, %s) < ? LIMIT %d;",
+                    COLUMN_UUID, getName(), COLUMN_STATUS,
+                    TypeConvertUtils.statusAsInt(Status.COMPLETED), TypeConvertUtils.statusAsInt(Status.DELETED),
+                    COLUMN_MODIFIED, COLUMN_ENTRY, ARCHIVE_BATCH_SIZE),
+                    new String[] { String.valueOf(before) });
+            try {
+                while (cursor.moveToNext()) {
+                    if (ids.length() > 0)
+                        ids.append(',');
+                    ids.append(cursor.getLong(0));
+                    uuids.add(TypeConvertUtils.bytesAsUuid(cursor.getBlob(1)));
+                }
+            } finally {
+                cursor.close();
+            }
+            if (uuids.isEmpty())
+                return uuids;
+
+            String columns = String.join(", ", FIELD_COLUMNS);
+            database.execSQL(String.format("INSERT INTO %s (%s) SELECT %s FROM %s WHERE _id IN (%s);",
+                    archivedTaskTable.getName(), columns, columns, getName(), ids));
+            database.execSQL(String.format("DELETE FROM %s WHERE docid IN (%s);", SEARCH_TABLE_NAME, ids));
+            database.execSQL(String.format("DELETE FROM %s WHERE _id IN (%s);", getName(), ids));
+
+            // rows were deleted without going through delete(): drop them from the identity map.
+            if (getCache() != null)
+                getCache().clear();
+            return uuids;
+        });
+    }
+
+    /**
+     * Estimate the heap used by a task, to bound an identity map in bytes.
+     * @param task
+     * @return the estimated bytes.
+     */
+    public static int estimateSize(Task task) {
+        // object headers and fields of the task, its UUID and dates.
+        int size = 256;
+        if (task.getDescription() != null)
+            size += 40 + 2 * task.getDescription().length();
+        for (String tag : task.getTags())
+            size += 56 + 2 * tag.length();
+        for (Annotation annotation : task.getAnnotations())
+            size += 96 + (annotation.getDescription() == null ? 0 : 2 * annotation.getDescription().length());
+        return size;
+    }
+
+    /**
+     * Read all tasks as list rows: without their entry and modified dates, nor their annotations.
+     * Use `loadDetails` and `loadAnnotations` before showing or editing the whole task.
+     * While the rows of a version 2 table are being copied, see `migrateCompactEncodingChunk(..)`, the tasks are
+     * read whole from the old table instead.
+     * @return the tasks, with their tags.
+     * @throws DatabaseException
+     */
+    public List<Task> readAllListRows() throws DatabaseException {
+        List<Task> tasks = new ArrayList<>();
+        SQLiteDatabase database = getDatabaseHandler().getReadableDatabase();
+        if (hasLegacyTable(database)) {
+            tasks.addAll(readAllLegacy(database));
+            hydrate(tasks);
+            return tasks;
+        }
+        try {
+            Cursor cursor = database.query(getName(), LIST_COLUMNS, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    tasks.add(new Task(cursor.getLong(0), TypeConvertUtils.bytesAsUuid(cursor.getBlob(1)))
+                            .setDescription(cursor.getString(2))
+                            .setStatus(TypeConvertUtils.intAsStatus(cursor.getInt(3)))
+                            .setPriority(TypeConvertUtils.intAsPriority(cursor.getInt(4)))
+                            .setDue(getDate(cursor, 5))
+                            .setUrgency(cursor.getDouble(6))
+                            .setDetailsLoaded(false)
+                            .clearDirtyFields(Task.ALL_FIELDS));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+        hydrate(tasks);
+        return tasks;
+    }
+
+    /**
+     * Read the entry and modified dates of a task read as a list row.
+     * @param task
+     * @throws DatabaseException
+     */
+    public void loadDetails(Task task) throws DatabaseException {
+        if (task.isDetailsLoaded())
+            return;
+        Task cached = getCache() == null ? null : getCache().getByKey(task.getUuid());
+        if (cached != null) {
+            task.setEntry(cached.getEntry())
+                    .setModified(cached.getModified())
+                    .setDetailsLoaded(true)
+                    .clearDirtyFields(Task.FIELD_ENTRY | Task.FIELD_MODIFIED);
+            return;
+        }
+        List<Date[]> dates = query()
+                .select(COLUMN_ENTRY, COLUMN_MODIFIED)
+                .where(COLUMN_UUID, Query.Operator.EQ, task.getUuid())
+                .list(cursor -> new Date[] { getDate(cursor, 0), getDate(cursor, 1) });
+        if (dates.isEmpty())
+            throw new DatabaseException("Operation loadDetails(" + task.getUuid() + "): no element with that uuid");
+        task.setEntry(dates.get(0)[0])
+                .setModified(dates.get(0)[1])
+                .setDetailsLoaded(true)
+                .clearDirtyFields(Task.FIELD_ENTRY | Task.FIELD_MODIFIED);
+    }
+
+    /**
+     * A list row is never cached: `read` would return it without the columns it does not have.
+     * @param element
+     * @return true if the task has all its columns.
+     */
+    @Override
+    protected boolean isCacheable(Task element) {
+        return element.isDetailsLoaded();
+    }
+
+    @Override
+    protected long insert(SQLiteDatabase database, Task element) throws DatabaseException {
+        long id = super.insert(database, element);
+        indexDescription(database, element);
+        tagTable.replaceTags(database, element.getUuid(), element.getTags());
+        if (!element.getAnnotations().isEmpty())
+            annotationTable.replaceAnnotations(database, element.getUuid(), element.getAnnotations());
+        return id;
+    }
+
+    @Override
+    protected boolean update(SQLiteDatabase database, Task element) throws DatabaseException {
+        // only write what changed since the task was read. Dirty fields are left for the caller to clear once the
+        // transaction commits: a rolled back update must be written again.
+        int dirty = element.getDirtyFields();
+        int columnFields = updateShape(element, dirty & COLUMN_FIELDS);
+        if (columnFields == COLUMN_FIELDS) {
+            if (!super.update(database, element))
+                return false;
+        } else {
+            if (!updateDirtyColumns(database, element, columnFields))
+                return false;
+            cacheWritten(element);
+        }
+
+        if ((dirty & Task.FIELD_DESCRIPTION) != 0) {
+            unindexDescription(database, element);
+            indexDescription(database, element);
+        }
+        if ((dirty & Task.FIELD_TAGS) != 0)
+            tagTable.replaceTags(database, element.getUuid(), element.getTags());
+
+        // annotations that were never read must be kept as they are.
+        if ((dirty & Task.FIELD_ANNOTATIONS) != 0 && element.isAnnotationsLoaded())
+            annotationTable.replaceAnnotations(database, element.getUuid(), element.getAnnotations());
+        return true;
+    }
+
+    /*
+     * The columns to write for a set of dirty columns: no column, one of the UPDATE_SHAPES, all columns, or, for a
+     * list row with a dirty entry date or UUID, only the dirty columns.
+     */
+    private static int updateShape(Task element, int columnFields) {
+        if (columnFields == 0)
+            return 0;
+        for (int shape : UPDATE_SHAPES)
+            if ((columnFields & ~shape) == 0)
+                return shape;
+        return element.isDetailsLoaded() ? COLUMN_FIELDS : columnFields;
+    }
+
+    private static boolean isCachedShape(int columnFields) {
+        if (columnFields == 0)
+            return true;
+        for (int shape : UPDATE_SHAPES)
+            if (columnFields == shape)
+                return true;
+        return false;
+    }
+
+    /*
+     * Update only some columns: the first eight FIELD_* bits are the columns, in order.
+     * A task with no column to update is only checked for existence.
+     * Statements of other sets of columns than the update shapes are rare: they are compiled for one use, so they
+     * do not take the place of common statements in the statement cache of the connection.
+     */
+    private boolean updateDirtyColumns(SQLiteDatabase database, Task element, int columnFields) throws DatabaseException {
+        boolean cached = isCachedShape(columnFields);
+        SQLiteStatement statement;
+        try {
+            statement = cached
+                    ? getStatement(database, getUpdateDirtyStatement(columnFields))
+                    : database.compileStatement(getUpdateDirtyStatement(columnFields));
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+        synchronized (statement) {
+            try {
+                StatementBinder binder = new StatementBinder(statement);
+                int parameter = 1;
+                for (int column = 1; column <= FIELD_COLUMNS.length; column++)
+                    if ((columnFields & (1 << (column - 1))) != 0)
+                        TaskRowCodec.INSTANCE.bindColumn(binder, parameter++, column, element);
+                statement.bindLong(parameter, element.getId());
+                if (columnFields == 0)
+                    return statement.simpleQueryForLong() == 1;
+                return statement.executeUpdateDelete() == 1;
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                if (cached)
+                    statement.clearBindings();
+                else
+                    statement.close();
+            }
+        }
+    }
+
+    private String getUpdateDirtyStatement(int columnFields) {
+        synchronized (updateDirtyStatements) {
+            String sql = updateDirtyStatements[columnFields];
+            if (sql == null) {
+                if (columnFields == 0) {
+                    sql = String.format("SELECT EXISTS (SELECT 1 FROM %s WHERE _id = ?);", getName());
+                } else {
+                    StringBuilder set = new StringBuilder();
+                    for (int column = 1; column <= FIELD_COLUMNS.length; column++) {
+                        if ((columnFields & (1 << (column - 1))) != 0) {
+                            if (set.length() > 0)
+                                set.append(", ");
+                            set.append(FIELD_COLUMNS[column - 1]).append(" = ?");
+                        }
+                    }
+                    sql = String.format("UPDATE %s SET %s WHERE _id = ?;", getName(), set);
+                }
+                updateDirtyStatements[columnFields] = sql;
+            }
+            return sql;
+        }
+    }
+
+    @Override
+    protected boolean delete(SQLiteDatabase database, Task element) throws DatabaseException {
+        if (!super.delete(database, element))
+            return false;
+        unindexDescription(database, element);
+        tagTable.deleteTags(database, element.getUuid());
+        annotationTable.deleteAnnotations(database, element.getUuid());
+        return true;
     }
 
     @Override
@@ -58,54 +630,474 @@ public class TaskTable extends Table<Task> {
         ContentValues values = new ContentValues();
         values.put(COLUMN_UUID, TypeConvertUtils.uuidAsBytes(element.getUuid()));
         values.put(COLUMN_DESCRIPTION, element.getDescription());
-        values.put(COLUMN_STATUS, element.getStatus().toString());
-        values.put(COLUMN_PRIORITY, element.getPriority().toString());
-        values.put(COLUMN_ENTRY, TypeConvertUtils.dateAsString(element.getEntry()));
-        values.put(COLUMN_MODIFIED, TypeConvertUtils.dateAsString(element.getModified()));
-        values.put(COLUMN_DUE, TypeConvertUtils.dateAsString(element.getDue()));
+        values.put(COLUMN_STATUS, TypeConvertUtils.statusAsInt(element.getStatus()));
+        values.put(COLUMN_PRIORITY, TypeConvertUtils.priorityAsInt(element.getPriority()));
+        values.put(COLUMN_ENTRY, TypeConvertUtils.dateAsLong(element.getEntry()));
+        values.put(COLUMN_MODIFIED, TypeConvertUtils.dateAsLong(element.getModified()));
+        values.put(COLUMN_DUE, TypeConvertUtils.dateAsLong(element.getDue()));
         values.put(COLUMN_URGENCY, element.getUrgency());
         return values;
     }
 
+    /**
+     * Read a task by its UUID, using the unique index on the uuid column.
+     * @param uuid
+     * @return the task.
+     * @throws DatabaseException if there is no task with that UUID.
+     */
+    public Task readByUuid(UUID uuid) throws DatabaseException {
+        if (getCache() != null) {
+            Task cached = getCache().getByKey(uuid);
+            if (cached != null)
+                return cached;
+        }
+        List<Task> tasks = query()
+                .where(COLUMN_UUID, Query.Operator.EQ, uuid)
+                .list();
+        if (tasks.isEmpty())
+            throw new DatabaseException("Operation readByUuid(" + uuid + "): no element with that uuid");
+        return tasks.get(0);
+    }
+
+    /**
+     * Read the tasks with the given UUIDs. UUIDs without a task are ignored.
+     * @param uuids
+     * @return the tasks found, in no particular order.
+     * @throws DatabaseException
+     */
+    public List<Task> readAllByUuids(Collection<UUID> uuids) throws DatabaseException {
+        List<Task> tasks = new ArrayList<>(uuids.size());
+        List<UUID> batch = new ArrayList<>(Math.min(uuids.size(), UUID_BATCH_SIZE));
+        for (UUID uuid : uuids) {
+            batch.add(uuid);
+            if (batch.size() == UUID_BATCH_SIZE) {
+                tasks.addAll(query().whereIn(COLUMN_UUID, batch).list());
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            tasks.addAll(query().whereIn(COLUMN_UUID, batch).list());
+        return tasks;
+    }
+
+    /**
+     * Check whether a task with the given UUID exists.
+     * @param uuid
+     * @return true if there is a task with that UUID.
+     */
+    public boolean existsByUuid(UUID uuid) {
+        SQLiteStatement statement = getStatement(getDatabaseHandler().getReadableDatabase(),
+                String.format("SELECT EXISTS (SELECT 1 FROM %s WHERE %s = ?);", getName(), COLUMN_UUID));
+        synchronized (statement) {
+            try {
+                statement.bindBlob(1, TypeConvertUtils.uuidAsBytes(uuid));
+                return statement.simpleQueryForLong() == 1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    /**
+     * Insert or update tasks by UUID: a task with a new UUID is inserted, a task with a known UUID replaces the stored
+     * one only if its modified date is newer. A missing modified date is older than any date. An imported task that
+     * is archived is compared with the archived one the same way, and restored only if it is newer.
+     * Tasks are written UPSERT_BATCH_SIZE per transaction, and get the id of the row they were written to.
+     * @param tasks
+     * @return the number of tasks inserted, updated and skipped.
+     * @throws DatabaseException
+     */
+    public ImportResult upsertAll(Collection<Task> tasks) throws DatabaseException {
+        ImportResult result = new ImportResult();
+        List<Task> batch = new ArrayList<>(Math.min(tasks.size(), UPSERT_BATCH_SIZE));
+        for (Task task : tasks) {
+            batch.add(task);
+            if (batch.size() == UPSERT_BATCH_SIZE) {
+                upsertBatch(batch, result);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            upsertBatch(batch, result);
+        return result;
+    }
+
+    /*
+     * Upsert one batch in a transaction, adding to the counts of an import. For importers that read their tasks
+     * a batch at a time. The batch is counted apart and added once committed, so a batch rolled back is not counted.
+     */
+    void upsertBatch(List<Task> batch, ImportResult result) throws DatabaseException {
+        ImportResult batchResult = inTransaction(() -> {
+            SQLiteDatabase database = getDatabaseHandler().getWritableDatabase();
+            checkNotMigrating(database);
+            ImportResult counts = new ImportResult();
+            for (Task task : batch) {
+                long id = findUpsertTarget(database, task);
+                if (id == NO_TASK) {
+                    // the imported task replaces an archived one, not only the fields it set.
+                    task.markAllFieldsDirty();
+                    if (insertOrRestore(database, task))
+                        counts.addInserted();
+                    else
+                        counts.addSkipped();
+                } else if (id == NOT_NEWER) {
+                    counts.addSkipped();
+                } else {
+                    // the imported task replaces the stored one, not only the fields it set.
+                    task.setId(id);
+                    task.markDirtyFields(Task.ALL_FIELDS);
+                    update(database, task);
+                    counts.addUpdated();
+                }
+            }
+            return counts;
+        });
+        result.add(batchResult);
+    }
+
+    /**
+     * Save and delete tasks by UUID, whatever their ids, in a single transaction: a saved task is inserted if its
+     * UUID is new and replaces the stored task otherwise. Saving an archived task restores it, deleting one deletes
+     * it from the archive, and deleting a UUID that is not stored does nothing.
+     * Tasks get the id of the row they were written to.
+     * @param saves
+     * @param deletes
+     * @throws DatabaseException
+     */
+    public void writeByUuid(Collection<Task> saves, Collection<Task> deletes) throws DatabaseException {
+        inTransaction(() -> {
+            SQLiteDatabase database = getDatabaseHandler().getWritableDatabase();
+            checkNotMigrating(database);
+            for (Task task : deletes) {
+                long id = findIdByUuid(database, task.getUuid());
+                if (id != NO_TASK) {
+                    task.setId(id);
+                    delete(database, task);
+                } else {
+                    archivedTaskTable.deleteByUuid(database, task.getUuid());
+                }
+            }
+            for (Task task : saves) {
+                long id = findIdByUuid(database, task.getUuid());
+                if (id == NO_TASK) {
+                    // a task archived while it was being changed is restored.
+                    insertOrRestore(database, task);
+                } else {
+                    task.setId(id);
+                    update(database, task);
+                }
+            }
+            return null;
+        });
+    }
+
+    /*
+     * Write a task whose UUID is not in the task table. An archived task is moved back as it was archived, then
+     * gets the dirty fields of the given task, which may be a list row. Any other task is inserted, unless it is a
+     * list row: its task was deleted meanwhile, and it does not have all the columns to insert.
+     * Returns false if the task was not written.
+     */
+    private boolean insertOrRestore(SQLiteDatabase database, Task task) throws DatabaseException {
+        long id = restoreArchived(database, task.getUuid());
+        if (id != NO_TASK) {
+            task.setId(id);
+            update(database, task);
+            return true;
+        }
+        if (!task.isDetailsLoaded()) {
+            Log.w(TAG, "Not writing task " + task.getUuid() + ": it is no longer stored.");
+            return false;
+        }
+        insert(database, task);
+        return true;
+    }
+
+    /*
+     * Move an archived task back to the task table, with all its columns, and index it for search. Its tags and
+     * annotations never left their tables. Returns its new id, or NO_TASK if it is not archived.
+     */
+    private long restoreArchived(SQLiteDatabase database, UUID uuid) throws DatabaseException {
+        String columns = String.join(", ", FIELD_COLUMNS);
+        SQLiteStatement statement = getStatement(database, String.format(
+                "INSERT INTO %s (%s) SELECT %s FROM %s WHERE %s = ?;",
+                getName(), columns, columns, archivedTaskTable.getName(), COLUMN_UUID));
+        long id;
+        synchronized (statement) {
+            try {
+                statement.bindBlob(1, TypeConvertUtils.uuidAsBytes(uuid));
+                // -1 when no row is inserted.
+                id = statement.executeInsert();
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+        if (id == -1)
+            return NO_TASK;
+
+        archivedTaskTable.removeByUuid(database, uuid);
+        statement = getStatement(database, String.format("INSERT INTO %1$s (docid, %2$s) SELECT _id, %2$s FROM %3$s WHERE _id = ?;",
+                SEARCH_TABLE_NAME, COLUMN_DESCRIPTION, getName()));
+        synchronized (statement) {
+            try {
+                statement.bindLong(1, id);
+                statement.executeInsert();
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Find the id of the task with the given UUID.
+     * @param uuid
+     * @return the id, or null if there is no task with that UUID.
+     * @throws DatabaseException
+     */
+    public Long findIdByUuid(UUID uuid) throws DatabaseException {
+        long id = findIdByUuid(getDatabaseHandler().getReadableDatabase(), uuid);
+        return id == NO_TASK ? null : id;
+    }
+
+    private long findIdByUuid(SQLiteDatabase database, UUID uuid) throws DatabaseException {
+        SQLiteStatement statement = getStatement(database, String.format(
+                "SELECT IFNULL((SELECT _id FROM %s WHERE %s = ?), %d);", getName(), COLUMN_UUID, NO_TASK));
+        synchronized (statement) {
+            try {
+                statement.bindBlob(1, TypeConvertUtils.uuidAsBytes(uuid));
+                return statement.simpleQueryForLong();
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    /*
+     * One lookup per task: the id of the stored task if the given task is newer, NOT_NEWER if it is not newer than
+     * the stored or archived task, or NO_TASK if there is no task with its UUID or only an older archived one.
+     */
+    private long findUpsertTarget(SQLiteDatabase database, Task task) throws DatabaseException {
+        SQLiteStatement statement = getStatement(database, String.format(
+                "SELECT IFNULL((SELECT CASE WHEN IFNULL(%1$s, 0) < IFNULL(?1, 0) THEN _id ELSE %2$d END FROM %3$s WHERE %4$s = ?2), "
+                        + "IFNULL((SELECT CASE WHEN IFNULL(%1$s, 0) < IFNULL(?1, 0) THEN %5$d ELSE %2$d END FROM %6$s WHERE %4$s = ?2), %5$d));",
+                COLUMN_MODIFIED, NOT_NEWER, getName(), COLUMN_UUID, NO_TASK, archivedTaskTable.getName()));
+        synchronized (statement) {
+            try {
+                TaskRowCodec.bindDate(new StatementBinder(statement), 1, task.getModified());
+                statement.bindBlob(2, TypeConvertUtils.uuidAsBytes(task.getUuid()));
+                return statement.simpleQueryForLong();
+            } catch (SQLException e) {
+                throw new DatabaseException(e);
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    @Override
+    protected void bindValues(SQLiteStatement statement, Task element) throws DatabaseException {
+        TaskRowCodec.INSTANCE.bind(new StatementBinder(statement), element);
+    }
+
+    @Override
+    protected Object toColumnValue(Column column, Object value) throws DatabaseException {
+        if (value instanceof Date)
+            return TypeConvertUtils.dateAsLong((Date) value);
+        if (value instanceof Status)
+            return TypeConvertUtils.statusAsInt((Status) value);
+        if (value instanceof Priority)
+            return TypeConvertUtils.priorityAsInt((Priority) value);
+        if (value instanceof UUID)
+            return TypeConvertUtils.uuidAsBytes((UUID) value);
+        return super.toColumnValue(column, value);
+    }
+
     @Override
     protected Task fromCursor(Cursor cursor) throws DatabaseException {
+        return TaskRowCodec.INSTANCE.read(new CursorRow(cursor));
+    }
+
+    private static Date getDate(Cursor cursor, int index) {
+        return cursor.isNull(index) ? null : TypeConvertUtils.longAsDate(cursor.getLong(index));
+    }
+
+    /**
+     * Start the upgrade from database version 2, where dates were stored as formatted strings and enums by name, to
+     * epoch milliseconds and enum codes.
+     * SQLite cannot change the type of a column, so the table is rebuilt: the old table is kept aside and its rows are
+     * then copied by `migrateCompactEncodingChunk(..)`.
+     * @param database
+     */
+    public void startCompactEncodingMigration(SQLiteDatabase database) {
+        dropIndexes(database);
+        database.execSQL(String.format("ALTER TABLE %s RENAME TO %s;", getName(), getLegacyName()));
+        createSchema(database);
+    }
+
+    /**
+     * Copy the next `MIGRATION_BATCH_SIZE` rows, with their ids, from the version 2 table. Once all rows are copied,
+     * the old table is dropped and the indexes are created. The rows are not indexed for search as they are copied:
+     * the search index, created empty by a later upgrade, is filled at the end.
+     * Rows are copied in id order, so the largest id in the new table is where the copy resumes.
+     * @param database
+     * @return true when all rows are copied.
+     * @throws DatabaseException
+     */
+    public boolean migrateCompactEncodingChunk(SQLiteDatabase database) throws DatabaseException {
+        String oldTable = getLegacyName();
+
+        // same columns as bindValues(..), followed by the id.
+        String[] columns = getSelectAll();
+        StringBuilder insert = new StringBuilder(String.format("INSERT INTO %s (", getName()));
+        for (int i = 1; i < columns.length; i++)
+            insert.append(columns[i]).append(", ");
+        insert.append("_id) VALUES (?");
+        for (int i = 1; i < columns.length; i++)
+            insert.append(", ?");
+        insert.append(");");
+
+        int rows = 0;
+        SQLiteStatement statement = database.compileStatement(insert.toString());
+        try {
+            String lastId = String.format("(SELECT IFNULL(MAX(_id), -1) FROM %s)", getName());
+            Cursor cursor = database.query(oldTable, columns, "_id > " + lastId, null,
+                    null, null, "_id", String.valueOf(MIGRATION_BATCH_SIZE));
+            try {
+                while (cursor.moveToNext()) {
+                    Task task = fromLegacyCursor(cursor);
+                    bindValues(statement, task);
+                    statement.bindLong(columns.length, task.getId());
+                    statement.executeInsert();
+                    statement.clearBindings();
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        } finally {
+            statement.close();
+        }
+
+        if (rows == MIGRATION_BATCH_SIZE)
+            return false;
+
+        database.execSQL(String.format("DROP TABLE %s;", oldTable));
+        createIndexes(database);
+        createSearchIndex(database);
+        return true;
+    }
+
+    private String getLegacyName() {
+        return getName() + "_v2";
+    }
+
+    /*
+     * Rows written while the version 2 rows are copied would take ids that the copy needs.
+     */
+    private void checkNotMigrating(SQLiteDatabase database) throws DatabaseException {
+        if (hasLegacyTable(database))
+            throw new DatabaseException("Tasks cannot be written before the upgrade of the database is complete");
+    }
+
+    private boolean hasLegacyTable(SQLiteDatabase database) {
+        try {
+            return DatabaseUtils.longForQuery(database,
+                    "SELECT EXISTS (SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?);",
+                    new String[] { getLegacyName() }) == 1;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private List<Task> readAllLegacy(SQLiteDatabase database) throws DatabaseException {
+        List<Task> tasks = new ArrayList<>();
+        try {
+            Cursor cursor = database.query(getLegacyName(), getSelectAll(), null, null, null, null, "_id");
+            try {
+                while (cursor.moveToNext())
+                    tasks.add(fromLegacyCursor(cursor).clearDirtyFields(Task.ALL_FIELDS));
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+        return tasks;
+    }
+
+    /*
+     * Read a row stored with the version 2 encoding.
+     */
+    private static Task fromLegacyCursor(Cursor cursor) {
         Task task = new Task()
                 .setId(cursor.getLong(0))
                 .setUuid(TypeConvertUtils.bytesAsUuid(cursor.getBlob(1)))
                 .setDescription(cursor.getString(2))
-                .setStatus(Status.valueOf(cursor.getString(3)))
-                .setPriority(Priority.valueOf(cursor.getString(4)))
+                .setStatus(legacyEnum(Status.class, cursor.getString(3), Status.NONE))
+                .setPriority(legacyEnum(Priority.class, cursor.getString(4), Priority.NONE))
                 .setEntry(TypeConvertUtils.stringAsDate(cursor.getString(5)))
                 .setModified(TypeConvertUtils.stringAsDate(cursor.getString(6)))
                 .setDue(TypeConvertUtils.stringAsDate(cursor.getString(7)))
                 .setUrgency(cursor.getDouble(8));
-
         return task;
     }
 
+    private static <E extends Enum<E>> E legacyEnum(Class<E> type, String name, E fallback) {
+        try {
+            return name == null ? fallback : Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+
     @Override
     public boolean hasInitialData() {
         return true;
     }
 
+    /**
+     * Set the tasks a new database is seeded with. The sample tasks of TaskData by default.
+     * @param seed
+     * @param progressListener notified while seeding, may be null.
+     */
+    public void setSeed(TaskSeed seed, TaskSeed.ProgressListener progressListener) {
+        this.seed = seed;
+        this.progressListener = progressListener;
+    }
+
     @Override
     public void initialize(SQLiteDatabase database) throws DatabaseException {
-        for (Task element : TaskData.getData()) {
+        // called from onCreate, which runs in a transaction: all rows are committed at once.
+        // the search index is built after the seed, see createTable.
+        long start = System.nanoTime();
+        int seeded = 0;
+        int total = -1;
+        try (TaskSeed.Reader reader = seed.open()) {
+            total = reader.size();
+            for (Task task = reader.next(); task != null; task = reader.next()) {
+                super.insert(database, task);
+                tagTable.replaceTags(database, task.getUuid(), task.getTags());
+                if (!task.getAnnotations().isEmpty())
+                    annotationTable.replaceAnnotations(database, task.getUuid(), task.getAnnotations());
 
-            // Id of inserted element, -1 if error(?).
-            long insertId = -1;
-
-            // insert into DB
-            try {
-                ContentValues values = toContentValues(element);
-                insertId = database.insertOrThrow(super.getName(), null, values);
+                seeded++;
+                if (progressListener != null && seeded % SEED_PROGRESS_INTERVAL == 0)
+                    progressListener.onProgress(seeded, total);
             }
-            catch (SQLException e) {
-                //database.close();
-                throw new DatabaseException(e);
-            }
-
-            element.setId(insertId);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
         }
+
+        if (progressListener != null)
+            progressListener.onProgress(seeded, total);
+        Log.i(TAG, String.format("Seeded %d tasks in %d ms.", seeded, (System.nanoTime() - start) / 1000000));
     }
 }
@@ -0,0 +1,79 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.database.SQLException;
+import android.util.Log;
+
+/**
+ * Switches the tasks database to incremental vacuum with a full VACUUM, while the device is idle and charging.
+ * The VACUUM rewrites the whole file: run from the app, it would hold the write lock, and so every write, for as
+ * long as it takes. The job is only scheduled while `TaskDatabaseHandler.needsFullVacuum` is true.
+ *
+ * The job runs in the process of the app. While the app has the database open, the job does not open a second
+ * connection to it, whose VACUUM would make the writes of the app fail as busy: it runs again at the next idle time.
+ */
+public class TaskVacuumJobService extends JobService {
+
+    private static final String TAG = "TaskVacuumJobService";
+    private static final int JOB_ID = 1;
+
+    /**
+     * Schedule the full VACUUM, unless it is already scheduled.
+     * @param context
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler.getPendingJob(JOB_ID) != null)
+            return;
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, TaskVacuumJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .build();
+        if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS)
+            Log.w(TAG, "Could not schedule the database vacuum.");
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        // jobs start on the main thread.
+        new Thread(() -> {
+            TaskDatabaseHandler dbHandler = TaskDatabaseHandler.openIfUnused(this);
+            if (dbHandler == null) {
+                Log.i(TAG, "Not vacuuming the database: the app is using it.");
+                jobFinished(params, true);
+                return;
+            }
+
+            boolean retry = false;
+            try {
+                // the rows of an upgrade are still being copied: vacuum once they are.
+                if (dbHandler.hasPendingMigrations()) {
+                    retry = true;
+                } else if (dbHandler.needsFullVacuum()) {
+                    long start = System.currentTimeMillis();
+                    dbHandler.vacuumFully();
+                    Log.i(TAG, "Vacuumed the database in " + (System.currentTimeMillis() - start) + " ms.");
+                }
+            } catch (SQLException e) {
+                // the app may be writing: try again at the next idle time.
+                Log.w(TAG, "Could not vacuum the database.", e);
+                retry = true;
+            } finally {
+                dbHandler.close();
+            }
+            jobFinished(params, retry);
+        }, TAG).start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // a VACUUM cannot be interrupted: if the device is no longer idle, the next run finds it done.
+        return true;
+    }
+}
@@ -0,0 +1,382 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatatypeMismatchException;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+
+/**
+ * Writes tasks to the database from a single background thread.
+ *
+ *   - writes are keyed by task UUID: repeated writes of a task before a flush are coalesced into its last state,
+ *     saved or deleted.
+ *   - a flush runs FLUSH_DELAY_MS after the first pending write and commits all pending writes in one transaction.
+ *     A flush that fails keeps its writes and is retried, waiting twice as long after each failure.
+ *   - a write that can never succeed, such as one that breaks a constraint, is dropped and its futures fail: the
+ *     writes of a failed transaction are split in halves until the others commit.
+ *   - every write is appended to a journal on the writer thread, before it is flushed, and replayed by `recover()`
+ *     if the process died before the flush. Until the replay succeeds, it is retried before each flush and the
+ *     journal is never cleared.
+ *
+ * The queue stores a copy of each task, so callers can keep changing their tasks after queuing a write.
+ */
+public class TaskWriteQueue implements Closeable {
+
+    private static final String TAG = "TaskWriteQueue";
+
+    // Delay between the first pending write and the flush, to coalesce bursts of writes.
+    private static final long FLUSH_DELAY_MS = 250;
+    // Longest delay before retrying a failed flush.
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+
+    /*
+     * The last state of a task and the futures of every write coalesced into it.
+     */
+    private static class PendingWrite {
+        private Task task;
+        private boolean delete;
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>(1);
+
+        private PendingWrite(Task task, boolean delete) {
+            this.task = task;
+            this.delete = delete;
+        }
+    }
+
+    private final TaskTable taskTable;
+    private final TaskJournal journal;
+    private final ScheduledExecutorService writer;
+
+    // guarded by this.
+    private Map<UUID, PendingWrite> pending = new LinkedHashMap<>();
+    private Map<UUID, PendingWrite> flushing = Collections.emptyMap();
+    private boolean flushScheduled;
+    private long retryDelay = FLUSH_DELAY_MS;
+    private boolean closed;
+    // false until the journal of the previous run is replayed.
+    private boolean recovered;
+
+    public TaskWriteQueue(TaskTable taskTable, TaskJournal journal) {
+        this.taskTable = taskTable;
+        this.journal = journal;
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, TAG));
+    }
+
+    /**
+     * Write the journaled writes of a previous run to the database, on the writer thread. Must be called before
+     * any write is queued; work submitted afterwards, such as reading the tasks, sees the replayed writes.
+     * If the replay fails, it is tried again before the next flush.
+     * @return a future completed with the number of writes replayed.
+     */
+    public CompletableFuture<Integer> recover() {
+        return submit(this::replayJournal);
+    }
+
+    private synchronized boolean isRecovered() {
+        return recovered;
+    }
+
+    // runs on the writer thread only.
+    private int replayJournal() throws DatabaseException {
+        if (isRecovered())
+            return 0;
+
+        List<TaskJournal.Entry> entries;
+        try {
+            entries = journal.readAll();
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+
+        // replaying the last state of each task is enough: journaled writes that were flushed are rewritten as is.
+        Map<UUID, PendingWrite> writes = new LinkedHashMap<>();
+        for (TaskJournal.Entry entry : entries) {
+            // the journal does not keep which fields changed: rewrite all the fields the task has.
+            coalesce(writes, entry.getTask().markAllFieldsDirty(), entry.isDelete());
+        }
+        if (!writes.isEmpty()) {
+            Map<PendingWrite, Exception> failures = new HashMap<>();
+            write(new ArrayList<>(writes.values()), failures);
+            for (Exception e : failures.values())
+                if (!isPermanent(e))
+                    throw e instanceof DatabaseException ? (DatabaseException) e : new DatabaseException(e);
+            Log.i(TAG, "Recovered " + (writes.size() - failures.size()) + " task writes from " + entries.size()
+                    + " journal records, dropped " + failures.size() + ".");
+        }
+
+        // the journal also holds the writes queued since: they were replayed too, in their journaled state.
+        try {
+            journal.clear();
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+        synchronized (this) {
+            recovered = true;
+        }
+        return writes.size();
+    }
+
+    /**
+     * Queue the insertion or update of a task.
+     * @param task
+     * @return a future completed once the task is in the database.
+     */
+    public CompletableFuture<Void> save(Task task) {
+        return enqueue(task, false);
+    }
+
+    /**
+     * Queue the deletion of a task.
+     * @param task
+     * @return a future completed once the task is deleted from the database.
+     */
+    public CompletableFuture<Void> delete(Task task) {
+        return enqueue(task, true);
+    }
+
+    /**
+     * Check if a task has a write that is not yet in the database.
+     * @param uuid
+     * @return true if a write of the task is pending.
+     */
+    public synchronized boolean isPending(UUID uuid) {
+        return pending.containsKey(uuid) || flushing.containsKey(uuid);
+    }
+
+    /**
+     * Flush the pending writes now.
+     * @return a future completed once the pending writes are in the database.
+     */
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(this::flushPending, writer);
+    }
+
+    /**
+     * Run other database work on the writer thread, so it never competes with the queue for the write lock.
+     * Pending writes are flushed first.
+     * @param work
+     * @param <R> the type of the result.
+     * @return a future completed with the result of the work.
+     */
+    public <R> CompletableFuture<R> submit(Callable<R> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            flushPending();
+            try {
+                return work.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, writer);
+    }
+
+    /**
+     * Flush the pending writes and stop the writer thread. Blocks until the flush is done.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            flush().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Final flush failed, writes are left in the journal.", e);
+        }
+        writer.shutdown();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close the journal.", e);
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Task task, boolean delete) {
+        // the copy carries the changes of the task: the next write of the task only has the changes made since.
+        Task copy = task.copy();
+        task.clearDirtyFields(Task.ALL_FIELDS);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            // the file is written on the writer thread, in the order of the writes, before they are flushed.
+            writer.execute(() -> {
+                try {
+                    journal.append(copy, delete);
+                } catch (IOException e) {
+                    // the write is still queued, it is only lost if the process dies before the flush.
+                    Log.w(TAG, "Could not journal a write of task " + copy.getUuid(), e);
+                }
+            });
+            coalesce(pending, copy, delete).futures.add(future);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                writer.schedule(this::flushPending, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        return future;
+    }
+
+    private static PendingWrite coalesce(Map<UUID, PendingWrite> writes, Task task, boolean delete) {
+        PendingWrite write = writes.get(task.getUuid());
+        if (write == null) {
+            write = new PendingWrite(task, delete);
+            writes.put(task.getUuid(), write);
+        } else {
+            // the previous state was never written: its changes are part of this one. A save after a delete
+            // replaces the whole task, as an undo of an edit does.
+            if (write.delete && !delete)
+                task.markAllFieldsDirty();
+            else
+                task.markDirtyFields(write.task.getDirtyFields());
+            write.task = task;
+            write.delete = delete;
+        }
+        return write;
+    }
+
+    // runs on the writer thread only.
+    private void flushPending() {
+        Map<UUID, PendingWrite> writes;
+        synchronized (this) {
+            writes = pending;
+            pending = new LinkedHashMap<>();
+            flushing = writes;
+            flushScheduled = false;
+        }
+        if (writes.isEmpty())
+            return;
+
+        try {
+            // the writes of the previous run go first: they are older than the queued ones.
+            replayJournal();
+        } catch (DatabaseException | RuntimeException e) {
+            Log.e(TAG, "Could not replay the journal before writing " + writes.size() + " tasks.", e);
+            // the queued writes did not fail themselves: they are all retried.
+            DatabaseException failure = new DatabaseException("The journal of the previous run is not replayed");
+            Map<PendingWrite, Exception> failures = new HashMap<>();
+            for (PendingWrite write : writes.values())
+                failures.put(write, failure);
+            completeFlush(writes, failures);
+            return;
+        }
+
+        Map<PendingWrite, Exception> failures = new HashMap<>();
+        write(new ArrayList<>(writes.values()), failures);
+        completeFlush(writes, failures);
+    }
+
+    // runs on the writer thread only.
+    private void completeFlush(Map<UUID, PendingWrite> writes, Map<PendingWrite, Exception> failures) {
+        synchronized (this) {
+            flushing = Collections.emptyMap();
+            int retried = 0;
+            for (Map.Entry<PendingWrite, Exception> failure : failures.entrySet()) {
+                PendingWrite failed = failure.getKey();
+                UUID uuid = failed.task.getUuid();
+                if (isPermanent(failure.getValue())) {
+                    Log.e(TAG, "Dropped a write of task " + uuid + " that cannot succeed.", failure.getValue());
+                    continue;
+                }
+                // keep the write for the next flush, unless the task was written again since.
+                retried++;
+                PendingWrite newer = pending.get(uuid);
+                if (newer == null)
+                    pending.put(uuid, new PendingWrite(failed.task, failed.delete));
+                else if (failed.delete && !newer.delete)
+                    newer.task.markAllFieldsDirty();
+                else
+                    newer.task.markDirtyFields(failed.task.getDirtyFields());
+            }
+
+            if (retried > 0) {
+                Log.e(TAG, "Could not write " + retried + " of " + writes.size() + " tasks, retrying in "
+                        + retryDelay + " ms.");
+                // the writes are retried later, even if no other write is queued.
+                if (!flushScheduled && !closed) {
+                    flushScheduled = true;
+                    writer.schedule(this::flushPending, retryDelay, TimeUnit.MILLISECONDS);
+                }
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+            } else {
+                retryDelay = FLUSH_DELAY_MS;
+            }
+
+            // the journal also holds the writes queued since this flush started: keep it until they are flushed.
+            if (pending.isEmpty() && recovered) {
+                try {
+                    journal.clear();
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not clear the journal.", e);
+                }
+            }
+        }
+        for (PendingWrite write : writes.values()) {
+            Exception failure = failures.get(write);
+            for (CompletableFuture<Void> future : write.futures) {
+                if (failure == null)
+                    future.complete(null);
+                else
+                    future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /*
+     * Write tasks in one transaction. If it fails because of a write that can never succeed, the writes are split
+     * in halves, down to single writes, so that the others are committed.
+     * Each write that failed is put in `failures` with its error.
+     */
+    private void write(List<PendingWrite> writes, Map<PendingWrite, Exception> failures) {
+        try {
+            write(writes);
+        } catch (DatabaseException | RuntimeException e) {
+            if (writes.size() == 1 || !isPermanent(e)) {
+                for (PendingWrite write : writes)
+                    failures.put(write, e);
+                return;
+            }
+            int half = writes.size() / 2;
+            write(writes.subList(0, half), failures);
+            write(writes.subList(half, writes.size()), failures);
+        }
+    }
+
+    /*
+     * A write that breaks a constraint, or a task the table cannot hold, fails again on every retry. Other errors,
+     * such as a busy database or an upgrade still running, may not happen next time.
+     */
+    private static boolean isPermanent(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLiteConstraintException || cause instanceof SQLiteDatatypeMismatchException
+                    || cause instanceof IllegalArgumentException || cause instanceof NullPointerException)
+                return true;
+        }
+        return false;
+    }
+
+    private void write(List<PendingWrite> writes) throws DatabaseException {
+        List<Task> saves = new ArrayList<>();
+        List<Task> deletes = new ArrayList<>();
+        for (PendingWrite write : writes)
+            (write.delete ? deletes : saves).add(write.task);
+        taskTable.writeByUuid(saves, deletes);
+    }
+}
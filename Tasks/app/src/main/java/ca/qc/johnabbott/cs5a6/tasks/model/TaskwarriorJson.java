@@ -0,0 +1,338 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.CursorIterable;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+
+/**
+ * Export and import of tasks in the JSON format of Taskwarrior (`task export` and `task import`).
+ *
+ * Both directions stream: the exporter writes tasks as they are read from the database cursor, EXPORT_BATCH_SIZE at
+ * a time with one annotation query per batch, and the importer parses tasks one at a time and upserts them
+ * TaskTable.UPSERT_BATCH_SIZE per transaction. Memory use does not depend on the number of tasks.
+ *
+ *   - only the fields the app stores are written and read: uuid, description, status, priority, entry, modified,
+ *     due, urgency, tags and annotations. Other Taskwarrior fields are skipped on import.
+ *   - dates are in the Taskwarrior format, "20240115T093000Z", in UTC.
+ *   - the importer reads a JSON array of tasks, or one task object per line.
+ */
+public final class TaskwarriorJson {
+
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'", Locale.ROOT).withZone(ZoneOffset.UTC);
+
+    // Tasks whose annotations are read in one query, below the limit of SQLite on query parameters.
+    private static final int EXPORT_BATCH_SIZE = 500;
+
+    private TaskwarriorJson() {}
+
+    /**
+     * Write all tasks, archived ones included, as a JSON array.
+     * @param taskTable
+     * @param out where the JSON is written. It is flushed, not closed.
+     * @return the number of tasks written.
+     * @throws DatabaseException
+     * @throws IOException
+     */
+    public static int export(TaskTable taskTable, Writer out) throws DatabaseException, IOException {
+        JsonWriter writer = new JsonWriter(out);
+        int count = 0;
+        writer.beginArray();
+        count += exportAll(taskTable.iterateAll(), taskTable, writer);
+        count += exportAll(taskTable.getArchivedTaskTable().iterateAll(), taskTable, writer);
+        writer.endArray();
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * Import tasks: a new UUID is inserted, a known UUID is updated if the imported task was modified later.
+     * @param taskTable
+     * @param in the JSON. It is not closed.
+     * @return the number of tasks inserted, updated and skipped.
+     * @throws DatabaseException
+     * @throws IOException if the JSON is malformed or not tasks. Batches before the error are kept.
+     */
+    public static ImportResult importTasks(TaskTable taskTable, Reader in) throws DatabaseException, IOException {
+        JsonReader reader = new JsonReader(in);
+        // lenient, to accept several top-level objects.
+        reader.setLenient(true);
+
+        ImportResult result = new ImportResult();
+        List<Task> batch = new ArrayList<>(TaskTable.UPSERT_BATCH_SIZE);
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext())
+                    addToBatch(taskTable, batch, readTask(reader), result);
+                reader.endArray();
+            } else {
+                addToBatch(taskTable, batch, readTask(reader), result);
+            }
+        }
+        if (!batch.isEmpty())
+            taskTable.upsertBatch(batch, result);
+        return result;
+    }
+
+    private static int exportAll(CursorIterable<Task> tasks, TaskTable taskTable, JsonWriter writer)
+            throws DatabaseException, IOException {
+        int count = 0;
+        List<Task> batch = new ArrayList<>(EXPORT_BATCH_SIZE);
+        try {
+            for (Task task : tasks) {
+                batch.add(task);
+                if (batch.size() == EXPORT_BATCH_SIZE) {
+                    count += exportBatch(batch, taskTable, writer);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty())
+                count += exportBatch(batch, taskTable, writer);
+        } catch (IllegalStateException e) {
+            // CursorIterable reports read errors unchecked.
+            if (e.getCause() instanceof DatabaseException)
+                throw (DatabaseException) e.getCause();
+            throw e;
+        } finally {
+            tasks.close();
+        }
+        return count;
+    }
+
+    private static int exportBatch(List<Task> batch, TaskTable taskTable, JsonWriter writer)
+            throws DatabaseException, IOException {
+        // annotations are not read with tasks.
+        Map<UUID, List<Annotation>> annotations = new HashMap<>();
+        for (Task task : batch)
+            annotations.put(task.getUuid(), new ArrayList<>(0));
+        for (Annotation annotation : taskTable.getAnnotationTable().readByTaskUuids(annotations.keySet()))
+            annotations.get(annotation.getTaskUuid()).add(annotation);
+
+        for (Task task : batch)
+            writeTask(writer, task, annotations.get(task.getUuid()));
+        return batch.size();
+    }
+
+    private static void addToBatch(TaskTable taskTable, List<Task> batch, Task task, ImportResult result)
+            throws DatabaseException {
+        batch.add(task);
+        if (batch.size() == TaskTable.UPSERT_BATCH_SIZE) {
+            taskTable.upsertBatch(batch, result);
+            batch.clear();
+        }
+    }
+
+    private static void writeTask(JsonWriter writer, Task task, List<Annotation> annotations) throws IOException {
+        writer.beginObject();
+        writer.name("uuid").value(task.getUuid().toString());
+        if (task.getDescription() != null)
+            writer.name("description").value(task.getDescription());
+        writer.name("status").value(statusName(task.getStatus()));
+        if (task.getPriority() != Priority.NONE)
+            writer.name("priority").value(priorityName(task.getPriority()));
+        writeDate(writer, "entry", task.getEntry());
+        writeDate(writer, "modified", task.getModified());
+        writeDate(writer, "due", task.getDue());
+
+        if (!task.getTags().isEmpty()) {
+            writer.name("tags").beginArray();
+            for (String tag : task.getTags())
+                writer.value(tag);
+            writer.endArray();
+        }
+
+        if (!annotations.isEmpty()) {
+            writer.name("annotations").beginArray();
+            for (Annotation annotation : annotations) {
+                writer.beginObject();
+                writeDate(writer, "entry", annotation.getEntry());
+                writer.name("description").value(annotation.getDescription());
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+
+        writer.name("urgency").value(task.getUrgency());
+        writer.endObject();
+    }
+
+    private static Task readTask(JsonReader reader) throws IOException {
+        Task task = null;
+        String description = null;
+        Status status = Status.PENDING;
+        Priority priority = Priority.NONE;
+        Date entry = null;
+        Date modified = null;
+        Date due = null;
+        double urgency = 0;
+        List<String> tags = null;
+        List<Annotation> annotations = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "uuid":
+                    try {
+                        task = new Task(UUID.fromString(reader.nextString()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Invalid task UUID", e);
+                    }
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    break;
+                case "status":
+                    status = parseStatus(reader.nextString());
+                    break;
+                case "priority":
+                    priority = parsePriority(reader.nextString());
+                    break;
+                case "entry":
+                    entry = readDate(reader);
+                    break;
+                case "modified":
+                    modified = readDate(reader);
+                    break;
+                case "due":
+                    due = readDate(reader);
+                    break;
+                case "urgency":
+                    urgency = reader.nextDouble();
+                    break;
+                case "tags":
+                    tags = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext())
+                        tags.add(reader.nextString());
+                    reader.endArray();
+                    break;
+                case "annotations":
+                    annotations = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext())
+                        annotations.add(readAnnotation(reader));
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (task == null)
+            throw new IOException("Task without a UUID");
+        task.setDescription(description)
+                .setStatus(status)
+                .setPriority(priority)
+                .setEntry(entry)
+                .setModified(modified)
+                .setDue(due)
+                .setUrgency(urgency);
+        if (tags != null)
+            task.setTags(tags);
+        if (annotations != null) {
+            for (Annotation annotation : annotations)
+                annotation.setTaskUuid(task.getUuid());
+            task.setAnnotations(annotations);
+        }
+        return task;
+    }
+
+    private static Annotation readAnnotation(JsonReader reader) throws IOException {
+        Annotation annotation = new Annotation();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "entry":
+                    annotation.setEntry(readDate(reader));
+                    break;
+                case "description":
+                    annotation.setDescription(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return annotation;
+    }
+
+    private static void writeDate(JsonWriter writer, String name, Date date) throws IOException {
+        if (date != null)
+            writer.name(name).value(DATE_FORMAT.format(date.toInstant()));
+    }
+
+    private static Date readDate(JsonReader reader) throws IOException {
+        String value = reader.nextString();
+        try {
+            return Date.from(Instant.from(DATE_FORMAT.parse(value)));
+        } catch (DateTimeParseException e) {
+            throw new IOException("Invalid date " + value, e);
+        }
+    }
+
+    private static String statusName(Status status) {
+        // NONE is not a Taskwarrior status: tasks without one are pending.
+        return status == Status.NONE ? "pending" : status.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static Status parseStatus(String name) {
+        for (Status status : Status.values())
+            if (status.name().equalsIgnoreCase(name))
+                return status;
+        return Status.PENDING;
+    }
+
+    private static String priorityName(Priority priority) {
+        switch (priority) {
+            case HIGH:
+                return "H";
+            case MEDIUM:
+                return "M";
+            default:
+                return "L";
+        }
+    }
+
+    private static Priority parsePriority(String name) {
+        switch (name) {
+            case "H":
+                return Priority.HIGH;
+            case "M":
+                return Priority.MEDIUM;
+            case "L":
+                return Priority.LOW;
+            default:
+                return Priority.NONE;
+        }
+    }
+}
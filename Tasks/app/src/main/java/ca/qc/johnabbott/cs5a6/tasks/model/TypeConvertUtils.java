@@ -1,39 +1,74 @@
 package ca.qc.johnabbott.cs5a6.tasks.model;
 
-import java.nio.ByteBuffer;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.UUID;
 
 public class TypeConvertUtils {
 
-    private final static SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    // Enum values by code, enums are stored by ordinal.
+    private final static Status[] STATUSES = Status.values();
+    private final static Priority[] PRIORITIES = Priority.values();
 
     public static String dateAsString(Date date) {
-        return date == null ? null : DATE_FORMATTER.format(date);
+        return date == null ? null : IsoDateCodec.format(date.getTime());
     }
 
     public static Date stringAsDate(String string) {
         try {
-            return string == null ? null : DATE_FORMATTER.parse(string);
+            return string == null ? null : new Date(IsoDateCodec.parse(string));
         } catch (ParseException e) {
             return null;
         }
     }
 
-    // Source https://stackoverflow.com/questions/17893609/convert-uuid-to-byte-that-works-when-using-uuid-nameuuidfrombytesb
+    public static Long dateAsLong(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    public static Date longAsDate(long millis) {
+        return new Date(millis);
+    }
+
+    public static int statusAsInt(Status status) {
+        return status.ordinal();
+    }
+
+    public static Status intAsStatus(int code) {
+        return code >= 0 && code < STATUSES.length ? STATUSES[code] : Status.NONE;
+    }
+
+    public static int priorityAsInt(Priority priority) {
+        return priority.ordinal();
+    }
+
+    public static Priority intAsPriority(int code) {
+        return code >= 0 && code < PRIORITIES.length ? PRIORITIES[code] : Priority.NONE;
+    }
+
+    // Big-endian, most significant bits first: the same layout as ByteBuffer, without the wrapper.
     public static UUID bytesAsUuid(byte[] bytes) {
-        ByteBuffer bb = ByteBuffer.wrap(bytes);
-        long firstLong = bb.getLong();
-        long secondLong = bb.getLong();
-        return new UUID(firstLong, secondLong);
+        return new UUID(bytesAsLong(bytes, 0), bytesAsLong(bytes, 8));
     }
 
     public static byte[] uuidAsBytes(UUID uuid) {
-        ByteBuffer bb = ByteBuffer.wrap(new byte[16]);
-        bb.putLong(uuid.getMostSignificantBits());
-        bb.putLong(uuid.getLeastSignificantBits());
-        return bb.array();
+        byte[] bytes = new byte[16];
+        longIntoBytes(uuid.getMostSignificantBits(), bytes, 0);
+        longIntoBytes(uuid.getLeastSignificantBits(), bytes, 8);
+        return bytes;
+    }
+
+    private static long bytesAsLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++)
+            value = (value << 8) | (bytes[i] & 0xFF);
+        return value;
+    }
+
+    private static void longIntoBytes(long value, byte[] bytes, int offset) {
+        for (int i = offset + 7; i >= offset; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
     }
 }
@@ -0,0 +1,13 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+/**
+ * Binds the parameters of a compiled statement, whatever the database driver.
+ * Parameters are numbered from 1, as in SQL.
+ */
+public interface Binder {
+    void bindNull(int parameter) throws DatabaseException;
+    void bindLong(int parameter, long value) throws DatabaseException;
+    void bindDouble(int parameter, double value) throws DatabaseException;
+    void bindString(int parameter, String value) throws DatabaseException;
+    void bindBlob(int parameter, byte[] value) throws DatabaseException;
+}
@@ -3,6 +3,7 @@ package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
  * Copyright (c) 2020 Ian Clement. All rights reserved.
  */
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -12,6 +13,14 @@ import java.util.List;
  */
 public interface CRUDRepository<K, T> {
 
+    /**
+     * A block of repository operations to be run as a single unit.
+     * @param <R> the result of the block.
+     */
+    interface Transaction<R> {
+        R run() throws DatabaseException;
+    }
+
     /**
      * Create an element in the repository.
      * @param element
@@ -35,6 +44,21 @@ public interface CRUDRepository<K, T> {
      */
     List<T> readAll() throws DatabaseException;
 
+    /**
+     * Read a page of elements from the repository.
+     * Pages are located by key instead of by offset: a page starts right after the last element of the previous
+     * page, so reading a page never scans the pages before it.
+     * When ordered by a column other than the key, the page is located by that column's value in the element with
+     * afterKey. If that element was deleted since the previous page, the page can start over from the beginning:
+     * callers that page while elements are deleted should order by key, which has no such restriction.
+     * @param afterKey the key of the last element of the previous page, null for the first page.
+     * @param limit the maximum number of elements in the page.
+     * @param orderBy the order of the elements, ties are ordered by key in the same direction. Null to order by key.
+     * @return the elements of the page.
+     * @throws DatabaseException
+     */
+    List<T> readPage(K afterKey, int limit, Order orderBy) throws DatabaseException;
+
     /**
      * Update an element in the repository.
      * @param element
@@ -50,4 +74,36 @@ public interface CRUDRepository<K, T> {
      * @throws DatabaseException
      */
     boolean delete(T element) throws DatabaseException;
+
+    /**
+     * Create several elements in the repository as a single unit.
+     * @param elements
+     * @return the keys of the created elements, in the same order as the elements.
+     * @throws DatabaseException
+     */
+    List<K> createAll(Collection<T> elements) throws DatabaseException;
+
+    /**
+     * Update several elements in the repository as a single unit.
+     * @param elements
+     * @return for each element (in order), true if it was in the repository, false otherwise.
+     * @throws DatabaseException
+     */
+    List<Boolean> updateAll(Collection<T> elements) throws DatabaseException;
+
+    /**
+     * Delete several elements from the repository as a single unit.
+     * @param elements
+     * @return for each element (in order), true if it was in the repository, false otherwise.
+     * @throws DatabaseException
+     */
+    List<Boolean> deleteAll(Collection<T> elements) throws DatabaseException;
+
+    /**
+     * Run a block of operations as a single unit: either all of its changes are kept, or none are.
+     * @param transaction the operations to run.
+     * @return the result of the block.
+     * @throws DatabaseException
+     */
+    <R> R inTransaction(Transaction<R> transaction) throws DatabaseException;
 }
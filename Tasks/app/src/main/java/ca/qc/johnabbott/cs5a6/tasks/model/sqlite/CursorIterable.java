@@ -0,0 +1,91 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import android.database.Cursor;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily reads the elements of a table from an open cursor, a small batch of rows at a time.
+ *
+ * The cursor is closed as soon as the last row is read, or when `close()` is called: use it in a
+ * try-with-resources block when iteration may stop early. The elements can only be iterated once.
+ *
+ * @param <T>
+ */
+public class CursorIterable<T extends Identifiable<Long>> implements Iterable<T>, Closeable {
+
+    private final Table<T> table;
+    private final Cursor cursor;
+    private final ArrayDeque<T> batch;
+    private boolean iterated;
+
+    // rows read ahead of the iteration.
+    private static final int BATCH_SIZE = 256;
+
+    CursorIterable(Table<T> table, Cursor cursor) {
+        this.table = table;
+        this.cursor = cursor;
+        batch = new ArrayDeque<>(BATCH_SIZE);
+        iterated = false;
+        if(!cursor.moveToFirst())
+            cursor.close();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if(iterated)
+            throw new IllegalStateException("The elements of a cursor can only be iterated once.");
+        iterated = true;
+
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return !batch.isEmpty() || (!cursor.isClosed() && !cursor.isAfterLast());
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                if(batch.isEmpty())
+                    readBatch();
+                return batch.poll();
+            }
+        };
+    }
+
+    /*
+     * Read up to BATCH_SIZE rows ahead, so the table hydrates them together.
+     */
+    private void readBatch() {
+        List<T> elements = new ArrayList<>(BATCH_SIZE);
+        try {
+            while(elements.size() < BATCH_SIZE && !cursor.isClosed()) {
+                T element = table.fromCursor(cursor);
+                element.setId(cursor.getLong(0));
+                elements.add(element);
+
+                // release the cursor as soon as the last row is read.
+                if(!cursor.moveToNext())
+                    close();
+            }
+            table.hydrate(elements);
+        }
+        catch (DatabaseException e) {
+            close();
+            throw new IllegalStateException("Could not read element from table " + table.getName(), e);
+        }
+        batch.addAll(elements);
+    }
+
+    @Override
+    public void close() {
+        if(!cursor.isClosed())
+            cursor.close();
+    }
+}
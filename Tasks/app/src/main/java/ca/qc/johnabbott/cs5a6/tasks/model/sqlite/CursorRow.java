@@ -0,0 +1,45 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import android.database.Cursor;
+
+/**
+ * The current row of an Android cursor.
+ */
+public class CursorRow implements Row {
+
+    private final Cursor cursor;
+
+    public CursorRow(Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return cursor.isNull(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return cursor.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return cursor.getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return cursor.getDouble(column);
+    }
+
+    @Override
+    public String getString(int column) {
+        return cursor.getString(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return cursor.getBlob(column);
+    }
+}
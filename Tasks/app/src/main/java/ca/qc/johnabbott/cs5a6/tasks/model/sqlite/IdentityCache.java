@@ -0,0 +1,160 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Identity map of the elements of a table: one instance per row, found by id or by an alternate key.
+ *
+ *   - bounded by a total size, in entries or in estimated bytes: the least recently used elements are evicted first.
+ *   - the table puts elements it reads or writes, and removes the ones it deletes.
+ *
+ * @param <T> the type of elements.
+ */
+public class IdentityCache<T extends Identifiable<Long>> {
+
+    /*
+     * A cached element and its size when it was put: elements can change after that, but the cache must remove the
+     * size it added.
+     */
+    private static class Entry<T> {
+        private final T element;
+        private final int size;
+
+        private Entry(T element, int size) {
+            this.element = element;
+            this.size = size;
+        }
+    }
+
+    private final LruCache<Long, Entry<T>> byId;
+    private final Map<Object, Long> idsByKey = new HashMap<>();
+    private final ToIntFunction<T> sizer;
+    private final Function<T, Object> alternateKey;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Create a cache bounded by the number of elements.
+     * @param maxEntries
+     * @param alternateKey the alternate key of an element, or null if elements are only found by id.
+     */
+    public IdentityCache(int maxEntries, Function<T, Object> alternateKey) {
+        this(maxEntries, element -> 1, alternateKey);
+    }
+
+    /**
+     * Create a cache bounded by the total size of the elements.
+     * @param maxSize the total size of the cached elements, in the unit of the sizer.
+     * @param sizer the size of an element, for example its estimated bytes.
+     * @param alternateKey the alternate key of an element, or null if elements are only found by id.
+     */
+    public IdentityCache(int maxSize, ToIntFunction<T> sizer, Function<T, Object> alternateKey) {
+        this.sizer = sizer;
+        this.alternateKey = alternateKey;
+        byId = new LruCache<Long, Entry<T>>(maxSize) {
+            @Override
+            protected int sizeOf(Long id, Entry<T> entry) {
+                return entry.size;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long id, Entry<T> oldEntry, Entry<T> newEntry) {
+                // only called from the synchronized methods below.
+                removeKey(id, oldEntry.element);
+            }
+        };
+    }
+
+    /**
+     * @param id
+     * @return the element with that id, or null if it is not cached.
+     */
+    public synchronized T get(Long id) {
+        return count(byId.get(id));
+    }
+
+    /**
+     * @param key
+     * @return the element with that alternate key, or null if it is not cached.
+     */
+    public synchronized T getByKey(Object key) {
+        Long id = idsByKey.get(key);
+        return count(id == null ? null : byId.get(id));
+    }
+
+    /**
+     * Cache an element, replacing the element with the same id.
+     * @param element an element with an id.
+     */
+    public synchronized void put(T element) {
+        byId.put(element.getId(), new Entry<>(element, sizer.applyAsInt(element)));
+        if (alternateKey != null)
+            idsByKey.put(alternateKey.apply(element), element.getId());
+    }
+
+    /**
+     * Remove the element with the id of the given element.
+     * @param element
+     */
+    public synchronized void remove(T element) {
+        if (element.getId() != null)
+            byId.remove(element.getId());
+    }
+
+    /**
+     * Remove all elements. Hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        byId.evictAll();
+        idsByKey.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return the total size of the cached elements.
+     */
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "IdentityCache{" +
+                "size=" + byId.size() +
+                ", maxSize=" + byId.maxSize() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                '}';
+    }
+
+    private T count(Entry<T> entry) {
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.element;
+    }
+
+    private void removeKey(Long id, T element) {
+        if (alternateKey == null)
+            return;
+        Object key = alternateKey.apply(element);
+        // the key may already map to a newer element with another id.
+        if (id.equals(idsByKey.get(key)))
+            idsByKey.remove(key);
+    }
+}
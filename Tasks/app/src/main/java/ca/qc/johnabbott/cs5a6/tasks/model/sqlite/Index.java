@@ -0,0 +1,55 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a secondary index on one or more columns of a table.
+ */
+public class Index {
+
+    private final List<String> columns;
+    private boolean unique;
+
+    /**
+     * Create an index. Several columns make a composite index, in the order given.
+     * @param columns names of the indexed columns.
+     */
+    public Index(String... columns) {
+        if(columns.length == 0)
+            throw new IllegalArgumentException("An index needs at least one column.");
+        this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+        unique = false;
+    }
+
+    /* Getters and setters
+     *
+     *   - setters return "this" to allow cascading setters.
+     * */
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    public Index unique() {
+        this.unique = true;
+        return this;
+    }
+
+    /**
+     * Get the name of the index on a table, derived from the table and column names.
+     * @param table the table name.
+     * @return the index name.
+     */
+    public String getName(String table) {
+        StringBuilder sb = new StringBuilder(table);
+        for(String column : columns)
+            sb.append("_").append(column);
+        return sb.append("_idx").toString();
+    }
+}
@@ -0,0 +1,479 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table on a JDBC connection, for running the storage logic on a plain JVM: load tests and benchmarks against an
+ * embedded SQLite file, for example with the xerial sqlite-jdbc driver.
+ *
+ *   - the columns and the row conversion come from the same `RowCodec` as the Android table, and the SQL from the
+ *     same `SqlStatements`, so both backends create and write the same schema.
+ *   - the connection is owned by the caller: the table never closes it, only its prepared statements.
+ *   - not thread-safe: use one table (and connection) per thread.
+ *
+ * @param <T> the type of elements.
+ */
+public class JdbcTable<T extends Identifiable<Long>> implements CRUDRepository<Long, T>, Closeable {
+
+    private final Connection connection;
+    private final String name;
+    private final RowCodec<T> codec;
+    private final List<Column> columns;
+    private final List<Index> indexes;
+
+    // prepared statements by SQL.
+    private final Map<String, PreparedStatement> statements;
+
+    // nesting of inTransaction calls, and whether a nested call failed.
+    private int transactionDepth;
+    private boolean rollbackOnly;
+
+    /**
+     * Create a table.
+     * @param connection an open connection.
+     * @param name the table name.
+     * @param codec the columns and row conversion of the table.
+     */
+    public JdbcTable(Connection connection, String name, RowCodec<T> codec) {
+        this.connection = connection;
+        this.name = name;
+        this.codec = codec;
+        columns = new ArrayList<>();
+        columns.add(new Column("_id", Column.Type.INTEGER).primaryKey().autoincrement());
+        columns.addAll(codec.getColumns());
+        indexes = new ArrayList<>();
+        statements = new HashMap<>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Add a secondary index to the table.
+     * @param index index to add to the table.
+     */
+    public void addIndex(Index index) {
+        indexes.add(index);
+    }
+
+    /**
+     * Create the table and its secondary indexes.
+     * @throws DatabaseException
+     */
+    public void createTable() throws DatabaseException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(SqlStatements.createTable(name, columns));
+            for(Index index : indexes)
+                statement.execute(SqlStatements.createIndex(name, columns, index));
+        }
+        catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Drop the table.
+     * @throws DatabaseException
+     */
+    public void dropTable() throws DatabaseException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(SqlStatements.dropTable(name));
+        }
+        catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /* CRUD Operations */
+
+    @Override
+    public Long create(T element) throws DatabaseException {
+        return inTransaction(() -> insert(element));
+    }
+
+    @Override
+    public T read(Long id) throws DatabaseException {
+        List<T> elements = query(String.format("SELECT %s FROM %s WHERE _id = ?;", getSelectAll(), name), id);
+        if(elements.isEmpty())
+            throw new DatabaseException("Operation read(" + id + "): no element with that id");
+        return elements.get(0);
+    }
+
+    @Override
+    public List<T> readAll() throws DatabaseException {
+        return query(String.format("SELECT %s FROM %s;", getSelectAll(), name));
+    }
+
+    @Override
+    public List<T> readPage(Long afterKey, int limit, Order orderBy) throws DatabaseException {
+        if(orderBy == null)
+            orderBy = Order.asc("_id");
+        String column = SqlStatements.getColumn(name, columns, orderBy.getColumn()).getName();
+
+        String where = "";
+        Object[] parameters = new Object[0];
+        if(afterKey != null) {
+            where = " WHERE " + SqlStatements.pageCondition(name, column, orderBy.isDescending());
+            parameters = new Object[SqlStatements.pageParameters(column)];
+            Arrays.fill(parameters, afterKey);
+        }
+
+        return query(String.format("SELECT %s FROM %s%s ORDER BY %s LIMIT %d;",
+                getSelectAll(), name, where, SqlStatements.pageOrder(orderBy), limit), parameters);
+    }
+
+    @Override
+    public boolean update(T element) throws DatabaseException {
+        return inTransaction(() -> updateRow(element));
+    }
+
+    @Override
+    public boolean delete(T element) throws DatabaseException {
+        return inTransaction(() -> deleteRow(element));
+    }
+
+    /* Bulk Operations
+     *
+     *   - each bulk operation runs in a single transaction.
+     * */
+
+    @Override
+    public List<Long> createAll(Collection<T> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            List<Long> ids = new ArrayList<>(elements.size());
+            for(T element : elements)
+                ids.add(insert(element));
+            return ids;
+        });
+    }
+
+    @Override
+    public List<Boolean> updateAll(Collection<T> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            List<Boolean> results = new ArrayList<>(elements.size());
+            for(T element : elements)
+                results.add(updateRow(element));
+            return results;
+        });
+    }
+
+    @Override
+    public List<Boolean> deleteAll(Collection<T> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            List<Boolean> results = new ArrayList<>(elements.size());
+            for(T element : elements)
+                results.add(deleteRow(element));
+            return results;
+        });
+    }
+
+    /**
+     * Run a block as a single unit. Nested calls join the outermost transaction: if a nested block fails, the whole
+     * transaction is rolled back, as with Android transactions.
+     */
+    @Override
+    public <R> R inTransaction(Transaction<R> transaction) throws DatabaseException {
+        boolean outermost = transactionDepth == 0;
+        if(outermost) {
+            try {
+                connection.setAutoCommit(false);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+            rollbackOnly = false;
+        }
+        transactionDepth++;
+        boolean successful = false;
+        try {
+            R result = transaction.run();
+            successful = true;
+            return result;
+        }
+        finally {
+            transactionDepth--;
+            if(!successful)
+                rollbackOnly = true;
+            if(outermost)
+                endTransaction(successful);
+        }
+    }
+
+    /**
+     * Release the prepared statements. The connection stays open.
+     */
+    @Override
+    public void close() {
+        for(PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            }
+            catch (SQLException e) {
+                // nothing left to release.
+            }
+        }
+        statements.clear();
+    }
+
+    /**
+     * Complete elements read from the table with data stored elsewhere, once per batch of elements read.
+     * The default does nothing.
+     * @param elements the elements read.
+     * @throws DatabaseException
+     */
+    protected void hydrate(List<T> elements) throws DatabaseException {
+    }
+
+    /* Single row operations, inside a transaction */
+
+    private long insert(T element) throws DatabaseException {
+        try {
+            PreparedStatement statement = getStatement(SqlStatements.insert(name, columns));
+            codec.bind(new JdbcBinder(statement), element);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                if(!keys.next())
+                    throw new DatabaseException("Operation create: insert into " + name + " failed.");
+                long id = keys.getLong(1);
+                element.setId(id);
+                return id;
+            }
+        }
+        catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    private boolean updateRow(T element) throws DatabaseException {
+        try {
+            PreparedStatement statement = getStatement(SqlStatements.update(name, columns));
+            codec.bind(new JdbcBinder(statement), element);
+            statement.setLong(columns.size(), element.getId());
+            return statement.executeUpdate() == 1;
+        }
+        catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    private boolean deleteRow(T element) throws DatabaseException {
+        try {
+            PreparedStatement statement = getStatement(SqlStatements.delete(name));
+            statement.setLong(1, element.getId());
+            return statement.executeUpdate() == 1;
+        }
+        catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    private List<T> query(String sql, Object... parameters) throws DatabaseException {
+        List<T> elements = new ArrayList<>();
+        try {
+            PreparedStatement statement = getStatement(sql);
+            for(int i = 0; i < parameters.length; i++)
+                statement.setObject(i + 1, parameters[i]);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                Row row = new ResultSetRow(resultSet);
+                while(resultSet.next())
+                    elements.add(codec.read(row));
+            }
+        }
+        catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+        hydrate(elements);
+        return elements;
+    }
+
+    private String getSelectAll() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < columns.size(); i++) {
+            if(i > 0)
+                sb.append(", ");
+            sb.append(columns.get(i).getName());
+        }
+        return sb.toString();
+    }
+
+    private PreparedStatement getStatement(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if(statement == null) {
+            statement = sql.startsWith("INSERT")
+                    ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    private void endTransaction(boolean successful) throws DatabaseException {
+        try {
+            if(rollbackOnly)
+                connection.rollback();
+            else
+                connection.commit();
+        }
+        catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+        finally {
+            try {
+                connection.setAutoCommit(true);
+            }
+            catch (SQLException e) {
+                // the next transaction sets it again.
+            }
+        }
+        // the outer block completed, but a nested block failed and its error was handled.
+        if(rollbackOnly && successful)
+            throw new DatabaseException("Transaction on " + name + " rolled back: a nested block failed.");
+    }
+
+    /*
+     * The current row of a result set. JDBC numbers columns from 1.
+     */
+    private static class ResultSetRow implements Row {
+
+        private final ResultSet resultSet;
+
+        private ResultSetRow(ResultSet resultSet) {
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public boolean isNull(int column) throws DatabaseException {
+            try {
+                return resultSet.getObject(column + 1) == null;
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public int getInt(int column) throws DatabaseException {
+            try {
+                return resultSet.getInt(column + 1);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public long getLong(int column) throws DatabaseException {
+            try {
+                return resultSet.getLong(column + 1);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public double getDouble(int column) throws DatabaseException {
+            try {
+                return resultSet.getDouble(column + 1);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public String getString(int column) throws DatabaseException {
+            try {
+                return resultSet.getString(column + 1);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public byte[] getBlob(int column) throws DatabaseException {
+            try {
+                return resultSet.getBytes(column + 1);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+    }
+
+    /*
+     * Binds the parameters of a prepared statement.
+     */
+    private static class JdbcBinder implements Binder {
+
+        private final PreparedStatement statement;
+
+        private JdbcBinder(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public void bindNull(int parameter) throws DatabaseException {
+            try {
+                statement.setNull(parameter, Types.NULL);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public void bindLong(int parameter, long value) throws DatabaseException {
+            try {
+                statement.setLong(parameter, value);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public void bindDouble(int parameter, double value) throws DatabaseException {
+            try {
+                statement.setDouble(parameter, value);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public void bindString(int parameter, String value) throws DatabaseException {
+            try {
+                statement.setString(parameter, value);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+
+        @Override
+        public void bindBlob(int parameter, byte[] value) throws DatabaseException {
+            try {
+                statement.setBytes(parameter, value);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+        }
+    }
+}
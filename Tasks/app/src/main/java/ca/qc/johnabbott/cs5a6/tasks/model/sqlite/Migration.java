@@ -0,0 +1,64 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A step that upgrades a database to a given version.
+ *
+ * A migration has two parts:
+ *   - `upgrade(..)` changes the schema. It runs inside the open helper's upgrade transaction, so it must be quick.
+ *   - `migrateChunk(..)` rewrites data, one bounded chunk at a time. Each chunk runs in its own transaction once the
+ *     upgrade is committed, so a large rewrite never holds one long transaction, and an interrupted rewrite resumes
+ *     where it stopped the next time the database is opened. Chunks must work out their progress from the database
+ *     itself.
+ */
+public abstract class Migration {
+
+    private final int version;
+    private final String description;
+
+    /**
+     * Create a migration.
+     * @param version the database version this migration upgrades to.
+     * @param description what the migration does, for the migration log.
+     */
+    protected Migration(int version, String description) {
+        this.version = version;
+        this.description = description;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Change the schema.
+     * Precondition: called inside the upgrade transaction, after the migrations of all previous versions.
+     * @param database
+     * @throws DatabaseException
+     */
+    public abstract void upgrade(SQLiteDatabase database) throws DatabaseException;
+
+    /**
+     * Check whether the migration rewrites data in chunks after its upgrade.
+     * @return true if `migrateChunk(..)` must be run.
+     */
+    public boolean hasChunks() {
+        return false;
+    }
+
+    /**
+     * Rewrite the next chunk of data.
+     * Precondition: called inside a transaction, after `upgrade(..)` was committed.
+     * @param database
+     * @return true when there is no data left to rewrite.
+     * @throws DatabaseException
+     */
+    public boolean migrateChunk(SQLiteDatabase database) throws DatabaseException {
+        return true;
+    }
+}
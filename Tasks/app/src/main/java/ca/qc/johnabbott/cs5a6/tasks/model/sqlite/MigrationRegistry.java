@@ -0,0 +1,146 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The ordered migrations of a database, one per version.
+ *
+ * Applied migrations are recorded in the `schema_migration` table, with the time taken by their upgrade and by
+ * their chunked data rewrite, and whether the rewrite is complete.
+ */
+public class MigrationRegistry {
+
+    private static final String TAG = "MigrationRegistry";
+
+    public static final String TABLE_NAME = "schema_migration";
+
+    private final SortedMap<Integer, Migration> migrations;
+
+    public MigrationRegistry() {
+        migrations = new TreeMap<>();
+    }
+
+    /**
+     * Register a migration.
+     * @param migration
+     * @return this registry, to allow cascading calls.
+     */
+    public MigrationRegistry add(Migration migration) {
+        if(migrations.containsKey(migration.getVersion()))
+            throw new IllegalArgumentException("A migration to version " + migration.getVersion() + " is already registered.");
+        migrations.put(migration.getVersion(), migration);
+        return this;
+    }
+
+    /**
+     * Create the migration log. Called when the database is created.
+     * @param database
+     */
+    public void create(SQLiteDatabase database) {
+        database.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + "version INTEGER PRIMARY KEY, "
+                + "description TEXT, "
+                + "applied INTEGER, "
+                + "upgrade_ms INTEGER, "
+                + "data_ms INTEGER, "
+                + "completed INTEGER);");
+    }
+
+    /**
+     * Run the schema upgrade of every migration after the old version, up to the new one, in order.
+     * Precondition: called from the open helper's onUpgrade, inside its transaction.
+     * @param database
+     * @param oldVersion
+     * @param newVersion
+     * @throws DatabaseException
+     */
+    public void upgrade(SQLiteDatabase database, int oldVersion, int newVersion) throws DatabaseException {
+        create(database);
+        for(Migration migration : migrations.subMap(oldVersion + 1, newVersion + 1).values()) {
+            long start = System.nanoTime();
+            try {
+                migration.upgrade(database);
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+            long elapsed = (System.nanoTime() - start) / 1000000;
+
+            database.execSQL("INSERT OR REPLACE INTO " + TABLE_NAME + " VALUES (?, ?, ?, ?, ?, ?);", new Object[] {
+                    migration.getVersion(), migration.getDescription(), System.currentTimeMillis(), elapsed, 0,
+                    migration.hasChunks() ? 0 : 1 });
+            Log.i(TAG, String.format("Upgrade to version %d (%s) took %d ms", migration.getVersion(), migration.getDescription(), elapsed));
+        }
+    }
+
+    /**
+     * Check if chunked data rewrites are not complete yet.
+     * @param database
+     * @return true if `resume` has chunks to run.
+     */
+    public boolean hasPending(SQLiteDatabase database) {
+        create(database);
+        return DatabaseUtils.longForQuery(database,
+                "SELECT EXISTS (SELECT 1 FROM " + TABLE_NAME + " WHERE completed = 0);", null) == 1;
+    }
+
+    /**
+     * Run the chunked data rewrites that are not complete yet, each chunk in its own transaction.
+     * Can take long after a large upgrade: run it in the background, once the database is open.
+     * Precondition: called outside of any transaction.
+     * @param database
+     * @throws DatabaseException
+     */
+    public void resume(SQLiteDatabase database) throws DatabaseException {
+        create(database);
+
+        List<Integer> pending = new ArrayList<>();
+        Cursor cursor = database.rawQuery("SELECT version FROM " + TABLE_NAME + " WHERE completed = 0 ORDER BY version;", null);
+        try {
+            while(cursor.moveToNext())
+                pending.add(cursor.getInt(0));
+        }
+        finally {
+            cursor.close();
+        }
+
+        for(int version : pending) {
+            Migration migration = migrations.get(version);
+            if(migration == null)
+                throw new DatabaseException("No registered migration for pending version " + version);
+
+            long total = 0;
+            int chunks = 0;
+            boolean done = false;
+            while(!done) {
+                long start = System.nanoTime();
+                database.beginTransaction();
+                try {
+                    done = migration.migrateChunk(database);
+                    long elapsed = (System.nanoTime() - start) / 1000000;
+                    database.execSQL("UPDATE " + TABLE_NAME + " SET data_ms = data_ms + ?, completed = ? WHERE version = ?;",
+                            new Object[] { elapsed, done ? 1 : 0, version });
+                    database.setTransactionSuccessful();
+                    total += elapsed;
+                    chunks++;
+                }
+                catch (SQLException e) {
+                    throw new DatabaseException(e);
+                }
+                finally {
+                    database.endTransaction();
+                }
+            }
+            Log.i(TAG, String.format("Data migration to version %d (%s) took %d ms in %d chunks", version, migration.getDescription(), total, chunks));
+        }
+    }
+}
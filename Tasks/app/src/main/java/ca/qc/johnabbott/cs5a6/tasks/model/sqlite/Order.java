@@ -0,0 +1,50 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+/**
+ * Represents the order of elements read from a repository: a column and a direction.
+ */
+public class Order {
+
+    private final String column;
+    private final boolean descending;
+
+    private Order(String column, boolean descending) {
+        this.column = column;
+        this.descending = descending;
+    }
+
+    /**
+     * Order by a column, smallest value first.
+     * @param column the column name.
+     * @return the order.
+     */
+    public static Order asc(String column) {
+        return new Order(column, false);
+    }
+
+    /**
+     * Order by a column, largest value first.
+     * @param column the column name.
+     * @return the order.
+     */
+    public static Order desc(String column) {
+        return new Order(column, true);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Convert the order to SQL ORDER BY syntax
+     * @return
+     */
+    @Override
+    public String toString() {
+        return column + (descending ? " DESC" : " ASC");
+    }
+}
@@ -0,0 +1,288 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A query on a table, compiled to a single parameterized SQLite SELECT.
+ *
+ * Conditions are combined with AND and must name columns of the table. Values are converted to their stored
+ * representation by the table. For example:
+ *
+ *     taskTable.query()
+ *             .where(TaskTable.COLUMN_STATUS, Query.Operator.EQ, Status.PENDING)
+ *             .where(TaskTable.COLUMN_PRIORITY, Query.Operator.EQ, Priority.HIGH)
+ *             .orderBy(Order.desc(TaskTable.COLUMN_URGENCY))
+ *             .limit(50)
+ *             .list();
+ *
+ * @param <T>
+ */
+public class Query<T extends Identifiable<Long>> {
+
+    // comparison operators supported in conditions.
+    public enum Operator {
+        EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">="), LIKE("LIKE");
+
+        private final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private final Table<T> table;
+
+    private final StringBuilder where;
+    private final List<String> whereArgs;
+    private String[] projection;
+    private final List<Order> orders;
+    private int limit;
+
+    Query(Table<T> table) {
+        this.table = table;
+        where = new StringBuilder();
+        whereArgs = new ArrayList<>();
+        projection = null;
+        orders = new ArrayList<>();
+        limit = -1;
+    }
+
+    /* Builder methods
+     *
+     *   - return "this" to allow cascading calls.
+     * */
+
+    /**
+     * Keep only rows where the column compares to the value.
+     * @param column the column name.
+     * @param operator the comparison.
+     * @param value the value, null values must use `whereNull(..)`.
+     * @return the query.
+     * @throws DatabaseException if the table has no such column.
+     */
+    public Query<T> where(String column, Operator operator, Object value) throws DatabaseException {
+        if(value == null)
+            throw new DatabaseException("Cannot compare column " + column + " to null, use whereNull.");
+        Column c = table.getColumn(column);
+        appendCondition(c.getName() + " " + operator.sql + " " + parameter(c, value));
+        return this;
+    }
+
+    /**
+     * Keep only rows where the column is one of the values.
+     * @param column the column name.
+     * @param values the values.
+     * @return the query.
+     * @throws DatabaseException if the table has no such column.
+     */
+    public Query<T> whereIn(String column, Collection<?> values) throws DatabaseException {
+        Column c = table.getColumn(column);
+        if(values.isEmpty()) {
+            appendCondition("0");
+            return this;
+        }
+        StringBuilder sb = new StringBuilder(c.getName()).append(" IN (");
+        boolean first = true;
+        for(Object value : values) {
+            if(!first)
+                sb.append(", ");
+            first = false;
+            sb.append(parameter(c, value));
+        }
+        appendCondition(sb.append(")").toString());
+        return this;
+    }
+
+    /**
+     * Keep only rows where the column is null.
+     * @param column the column name.
+     * @return the query.
+     * @throws DatabaseException if the table has no such column.
+     */
+    public Query<T> whereNull(String column) throws DatabaseException {
+        appendCondition(table.getColumn(column).getName() + " IS NULL");
+        return this;
+    }
+
+    /**
+     * Keep only rows where the column is not null.
+     * @param column the column name.
+     * @return the query.
+     * @throws DatabaseException if the table has no such column.
+     */
+    public Query<T> whereNotNull(String column) throws DatabaseException {
+        appendCondition(table.getColumn(column).getName() + " IS NOT NULL");
+        return this;
+    }
+
+    /**
+     * Only read the given columns, in that order. The rows must then be read with a `RowMapper`.
+     * @param columns the column names.
+     * @return the query.
+     * @throws DatabaseException if the table has no such column.
+     */
+    public Query<T> select(String... columns) throws DatabaseException {
+        projection = new String[columns.length];
+        for(int i = 0; i < columns.length; i++)
+            projection[i] = table.getColumn(columns[i]).getName();
+        return this;
+    }
+
+    /**
+     * Order the rows, by each order in turn.
+     * @param orders the orders.
+     * @return the query.
+     * @throws DatabaseException if the table has no such column.
+     */
+    public Query<T> orderBy(Order... orders) throws DatabaseException {
+        for(Order order : orders) {
+            table.getColumn(order.getColumn());
+            this.orders.add(order);
+        }
+        return this;
+    }
+
+    /**
+     * Read at most `limit` rows.
+     * @param limit
+     * @return the query.
+     */
+    public Query<T> limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /* Execution */
+
+    /**
+     * Read the matching elements.
+     * @return the elements.
+     * @throws DatabaseException if the query has a projection.
+     */
+    public List<T> list() throws DatabaseException {
+        checkFullProjection();
+        return table.readList(execute());
+    }
+
+    /**
+     * Read the matching rows, converting each with a mapper.
+     * @param mapper converts the current row, with the columns in projection order.
+     * @return the converted rows.
+     * @throws DatabaseException
+     */
+    public <R> List<R> list(RowMapper<R> mapper) throws DatabaseException {
+        List<R> results = new ArrayList<>();
+        Cursor cursor = execute();
+        if(cursor != null) {
+            try {
+                cursor.moveToFirst();
+                while (!cursor.isAfterLast()) {
+                    results.add(mapper.map(cursor));
+                    cursor.moveToNext();
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Lazily read the matching elements.
+     * @return the elements, which must be closed if not read to the end.
+     * @throws DatabaseException if the query has a projection.
+     */
+    public CursorIterable<T> iterate() throws DatabaseException {
+        checkFullProjection();
+        return new CursorIterable<>(table, execute());
+    }
+
+    /**
+     * Count the matching rows, ignoring the order and limit.
+     * @return the number of rows.
+     */
+    public long count() {
+        SQLiteDatabase database = table.getDatabaseHandler().getReadableDatabase();
+        String sql = "SELECT COUNT(*) FROM " + table.getName() + (where.length() > 0 ? " WHERE " + where : "");
+        Cursor cursor = database.rawQuery(sql, whereArgs.toArray(new String[0]));
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Run the query.
+     */
+    private Cursor execute() {
+        SQLiteDatabase database = table.getDatabaseHandler().getReadableDatabase();
+
+        StringBuilder orderBy = new StringBuilder();
+        for(Order order : orders) {
+            if(orderBy.length() > 0)
+                orderBy.append(", ");
+            orderBy.append(order);
+        }
+
+        return database.query(
+                table.getName(),
+                projection == null ? table.getSelectAll() : projection,
+                where.length() > 0 ? where.toString() : null,
+                whereArgs.toArray(new String[0]),
+                null,
+                null,
+                orderBy.length() > 0 ? orderBy.toString() : null,
+                limit >= 0 ? String.valueOf(limit) : null);
+    }
+
+    private void checkFullProjection() throws DatabaseException {
+        if(projection != null)
+            throw new DatabaseException("Query on " + table.getName() + " selects columns: read the rows with a RowMapper.");
+    }
+
+    private void appendCondition(String condition) {
+        if(where.length() > 0)
+            where.append(" AND ");
+        where.append("(").append(condition).append(")");
+    }
+
+    /*
+     * Get the SQL for a value: a parameter, or a literal for blobs since query parameters are strings.
+     */
+    private String parameter(Column column, Object value) throws DatabaseException {
+        Object stored = table.toColumnValue(column, value);
+        if(stored == null)
+            return "NULL";
+        if(stored instanceof byte[])
+            return blobLiteral((byte[]) stored);
+        whereArgs.add(String.valueOf(stored));
+        return "?";
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Get the SQL literal for a blob value.
+     * @param bytes
+     * @return the literal, X'...'.
+     */
+    public static String blobLiteral(byte[] bytes) {
+        char[] literal = new char[bytes.length * 2 + 3];
+        literal[0] = 'X';
+        literal[1] = '\'';
+        for(int i = 0; i < bytes.length; i++) {
+            literal[2 + i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            literal[3 + i * 2] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        literal[literal.length - 1] = '\'';
+        return new String(literal);
+    }
+}
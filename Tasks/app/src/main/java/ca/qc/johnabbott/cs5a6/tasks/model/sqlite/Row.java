@@ -0,0 +1,14 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+/**
+ * Read access to the current row of a query, whatever the database driver.
+ * Columns are numbered from 0, in the order they were selected.
+ */
+public interface Row {
+    boolean isNull(int column) throws DatabaseException;
+    int getInt(int column) throws DatabaseException;
+    long getLong(int column) throws DatabaseException;
+    double getDouble(int column) throws DatabaseException;
+    String getString(int column) throws DatabaseException;
+    byte[] getBlob(int column) throws DatabaseException;
+}
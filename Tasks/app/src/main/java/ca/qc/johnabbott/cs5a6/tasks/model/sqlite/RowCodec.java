@@ -0,0 +1,47 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import java.util.List;
+
+/**
+ * The columns of a table and the conversion of its rows to and from elements, independent of the database driver:
+ * the same codec is used by `Table` on Android and by `JdbcTable` on a plain JVM.
+ *
+ *   - the columns are the ones after the `_id` primary key, which every table has.
+ *   - rows are read with `_id` first, then the columns in order.
+ *   - column n (from 1) is the n-th column after `_id`.
+ *
+ * @param <T> the type of elements.
+ */
+public interface RowCodec<T extends Identifiable<Long>> {
+
+    /**
+     * @return new instances of the columns after the id, in order.
+     */
+    List<Column> getColumns();
+
+    /**
+     * Create an element from a row with the id and all columns.
+     * @param row
+     * @return the element, with its id.
+     * @throws DatabaseException
+     */
+    T read(Row row) throws DatabaseException;
+
+    /**
+     * Bind the value of one column of an element.
+     * @param binder
+     * @param parameter the statement parameter.
+     * @param column the column, from 1.
+     * @param element
+     * @throws DatabaseException
+     */
+    void bindColumn(Binder binder, int parameter, int column, T element) throws DatabaseException;
+
+    /**
+     * Bind the values of all columns of an element, column n at parameter n.
+     * @param binder
+     * @param element
+     * @throws DatabaseException
+     */
+    void bind(Binder binder, T element) throws DatabaseException;
+}
@@ -0,0 +1,12 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import android.database.Cursor;
+
+/**
+ * Converts the current row of a query cursor to a value.
+ *
+ * @param <R>
+ */
+public interface RowMapper<R> {
+    R map(Cursor cursor) throws DatabaseException;
+}
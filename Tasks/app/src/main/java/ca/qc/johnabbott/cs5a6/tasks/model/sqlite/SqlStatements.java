@@ -0,0 +1,144 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import java.util.List;
+
+/**
+ * The SQL of table operations, built from the columns of a table. Shared by `Table` and `JdbcTable`, so both
+ * backends create and write the same schema.
+ *
+ *   - the first column is always the `_id` primary key.
+ *   - write statements bind the columns after the id in order, from parameter 1.
+ */
+final class SqlStatements {
+
+    private SqlStatements() {}
+
+    /*
+     * CREATE TABLE statement.
+     */
+    static String createTable(String table, List<Column> columns) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(String.format("CREATE TABLE %s (", table));
+        for(int i = 0; i < columns.size(); i++) {
+            if(i > 0)
+                sb.append(", ");
+            sb.append(columns.get(i).toString());
+        }
+        sb.append(");");
+        return sb.toString();
+    }
+
+    /*
+     * CREATE INDEX statement for an index of a table.
+     */
+    static String createIndex(String table, List<Column> columns, Index index) throws DatabaseException {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(index.isUnique() ? "CREATE UNIQUE INDEX" : "CREATE INDEX");
+        sb.append(String.format(" IF NOT EXISTS %s ON %s (", index.getName(table), table));
+
+        boolean first = true;
+        for(String column : index.getColumns()) {
+            if(!first)
+                sb.append(", ");
+            first = false;
+            sb.append(getColumn(table, columns, column).getName());
+        }
+        sb.append(");");
+        return sb.toString();
+    }
+
+    /*
+     * DROP TABLE statement.
+     */
+    static String dropTable(String table) {
+        return String.format("DROP TABLE IF EXISTS %s;", table);
+    }
+
+    /*
+     * INSERT statement for all columns but the id, with one parameter per column.
+     */
+    static String insert(String table, List<Column> columns) {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder parameters = new StringBuilder();
+        sb.append(String.format("INSERT INTO %s (", table));
+        for(int i = 1; i < columns.size(); i++) {
+            if(i > 1) {
+                sb.append(", ");
+                parameters.append(", ");
+            }
+            sb.append(columns.get(i).getName());
+            parameters.append("?");
+        }
+        sb.append(") VALUES (").append(parameters).append(");");
+        return sb.toString();
+    }
+
+    /*
+     * UPDATE statement for all columns but the id. The id is the last parameter.
+     */
+    static String update(String table, List<Column> columns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("UPDATE %s SET ", table));
+        for(int i = 1; i < columns.size(); i++) {
+            if(i > 1)
+                sb.append(", ");
+            sb.append(columns.get(i).getName()).append(" = ?");
+        }
+        sb.append(" WHERE _id = ?;");
+        return sb.toString();
+    }
+
+    /*
+     * DELETE statement by id.
+     */
+    static String delete(String table) {
+        return String.format("DELETE FROM %s WHERE _id = ?;", table);
+    }
+
+    /*
+     * Condition selecting the rows of a page after the row with a given id, in the order of a column.
+     * Every parameter is the id of that row: see `pageParameters`.
+     */
+    static String pageCondition(String table, String column, boolean descending) {
+        if(column.equals("_id"))
+            return descending ? "_id < ?" : "_id > ?";
+
+        // continue after the value of the previous page's last row, using the id to break ties.
+        // if that row was deleted, the subquery is NULL and the page can start over from the beginning.
+        // nulls come first in ascending order and last in descending order.
+        String last = String.format("(SELECT %s FROM %s WHERE _id = ?)", column, table);
+        if(descending)
+            return String.format("%1$s < %2$s OR (%1$s IS %2$s AND _id < ?) OR (%2$s IS NOT NULL AND %1$s IS NULL)", column, last);
+        else
+            return String.format("%1$s > %2$s OR (%1$s IS %2$s AND _id > ?) OR (%2$s IS NULL AND %1$s IS NOT NULL)", column, last);
+    }
+
+    /*
+     * Number of parameters of `pageCondition`.
+     */
+    static int pageParameters(String column) {
+        return column.equals("_id") ? 1 : 4;
+    }
+
+    /*
+     * ORDER BY clause of a page, ties ordered by id in the same direction.
+     */
+    static String pageOrder(Order orderBy) {
+        String order = orderBy.toString();
+        if(!orderBy.getColumn().equals("_id"))
+            order += orderBy.isDescending() ? ", _id DESC" : ", _id ASC";
+        return order;
+    }
+
+    /*
+     * Column of a table by name.
+     */
+    static Column getColumn(String table, List<Column> columns, String name) throws DatabaseException {
+        for(Column column : columns)
+            if(column.getName().equals(name))
+                return column;
+        throw new DatabaseException("Table " + table + " has no column " + name);
+    }
+}
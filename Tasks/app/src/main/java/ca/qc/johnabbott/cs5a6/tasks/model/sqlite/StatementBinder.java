@@ -0,0 +1,46 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Binds the parameters of an Android compiled statement.
+ */
+public class StatementBinder implements Binder {
+
+    private final SQLiteStatement statement;
+
+    public StatementBinder(SQLiteStatement statement) {
+        this.statement = statement;
+    }
+
+    @Override
+    public void bindNull(int parameter) {
+        statement.bindNull(parameter);
+    }
+
+    @Override
+    public void bindLong(int parameter, long value) {
+        statement.bindLong(parameter, value);
+    }
+
+    @Override
+    public void bindDouble(int parameter, double value) {
+        statement.bindDouble(parameter, value);
+    }
+
+    @Override
+    public void bindString(int parameter, String value) {
+        if (value == null)
+            statement.bindNull(parameter);
+        else
+            statement.bindString(parameter, value);
+    }
+
+    @Override
+    public void bindBlob(int parameter, byte[] value) {
+        if (value == null)
+            statement.bindNull(parameter);
+        else
+            statement.bindBlob(parameter, value);
+    }
+}
@@ -9,26 +9,43 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents a Table in an SQLite database
  * - currently only some integer primary keys are supported.
+ * - the connection is owned by the database handler and stays open between operations: the table never closes it.
  *
  * @author Ian Clement (ian.clement@johnabbott.qc.ca)
  */
 public abstract class Table<T extends Identifiable<Long>> implements CRUDRepository<Long, T> {
 
-    public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-
     private final SQLiteOpenHelper dbh;
 
     private final String name;
     private final List<Column> columns;
+    private final List<Index> indexes;
+
+    // write statements, built from the columns on first use.
+    private String insertStatement;
+    private String updateStatement;
+
+    // compiled statements by SQL, valid for the database they were compiled against.
+    private final Map<String, SQLiteStatement> statements;
+    private SQLiteDatabase statementsDatabase;
+
+    // optional identity map: one instance per row, null if reads always query the database.
+    private IdentityCache<T> cache;
 
     /**
      * Create a database table
@@ -38,8 +55,10 @@ public abstract class Table<T extends Identifiable<Long>> implements CRUDReposit
     public Table(SQLiteOpenHelper dbh, String name) {
         this.name = name;
         this.dbh = dbh;
-        columns = new LinkedList<>();
+        columns = new ArrayList<>();
         columns.add(new Column("_id", Column.Type.INTEGER).primaryKey().autoincrement());
+        indexes = new ArrayList<>();
+        statements = new HashMap<>();
     }
 
     /**
@@ -50,6 +69,49 @@ public abstract class Table<T extends Identifiable<Long>> implements CRUDReposit
         return dbh;
     }
 
+    /**
+     * Use an identity map for the elements of the table: `read` returns the cached instance of a row without a query,
+     * and list reads return the cached instances of the rows already cached.
+     * Elements written through the table are cached, unless `isCacheable` refuses them, elements deleted through the
+     * table are removed, and the cache is cleared when a transaction fails. Rows changed in other ways must be removed
+     * by the caller.
+     * Elements from `iterateAll` and `streamAll` are never cached.
+     * @param cache the cache, or null for none.
+     */
+    public void setCache(IdentityCache<T> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return the identity map of the table, or null if there is none.
+     */
+    public IdentityCache<T> getCache() {
+        return cache;
+    }
+
+    /**
+     * Check if an element written through the table can be cached. Subclasses whose elements may not hold every
+     * column refuse those, so `read` never returns them.
+     * @param element
+     * @return true by default.
+     */
+    protected boolean isCacheable(T element) {
+        return true;
+    }
+
+    /**
+     * Cache an element just written, or remove the row from the cache if the element cannot be cached.
+     * @param element
+     */
+    protected void cacheWritten(T element) {
+        if(cache == null)
+            return;
+        if(isCacheable(element))
+            cache.put(element);
+        else
+            cache.remove(element);
+    }
+
     /**
      * Get the table name.
      * @return The table name.
@@ -64,33 +126,44 @@ public abstract class Table<T extends Identifiable<Long>> implements CRUDReposit
      */
     public void addColumn(Column column) {
         columns.add(column);
+        insertStatement = null;
+        updateStatement = null;
     }
 
-    /*
-     * Get the SQL CREATE TABLE statement for this table.
+    /**
+     * Add a secondary index to the table.
+     * @param index index to add to the table.
      */
-    private String getCreateTableStatement() {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(String.format("CREATE TABLE %s (", name));
+    public void addIndex(Index index) {
+        indexes.add(index);
+    }
 
-        boolean first = false;
-        for(Column column : columns) {
-            if(!first)
-                first = true;
-            else
-                sb.append(", ");
-            sb.append(column.toString());
-        }
-        sb.append(");");
-        return sb.toString();
+    /*
+     * Get the SQL INSERT statement for all columns but the id, with one parameter per column.
+     */
+    private String getInsertStatement() {
+        if(insertStatement == null)
+            insertStatement = SqlStatements.insert(name, columns);
+        return insertStatement;
     }
 
     /*
-     * Get the SQL DROP TABLE statement for this table.
+     * Get the SQL UPDATE statement for all columns but the id. The id is the last parameter.
+     */
+    private String getUpdateStatement() {
+        if(updateStatement == null)
+            updateStatement = SqlStatements.update(name, columns);
+        return updateStatement;
+    }
+
+    /**
+     * Get a column of the table by name.
+     * @param name the column name.
+     * @return the column.
+     * @throws DatabaseException if the table has no such column.
      */
-    private String getDropTableStatement() {
-        return String.format("DROP TABLE IF EXISTS %s;", name);
+    public Column getColumn(String name) throws DatabaseException {
+        return SqlStatements.getColumn(this.name, columns, name);
     }
 
     /**
@@ -129,6 +202,85 @@ public abstract class Table<T extends Identifiable<Long>> implements CRUDReposit
      */
     protected abstract ContentValues toContentValues(T element) throws DatabaseException;
 
+    /**
+     * Bind the values of an element to a compiled INSERT or UPDATE statement.
+     * Each column is bound at its position in the table: the first column after the id is parameter 1.
+     * Subclasses should override this to bind values directly, the default implementation goes through
+     * `toContentValues(..)`.
+     * @param statement
+     * @param element
+     * @throws DatabaseException
+     */
+    protected void bindValues(SQLiteStatement statement, T element) throws DatabaseException {
+        ContentValues values = toContentValues(element);
+        for(int i = 1; i < columns.size(); i++) {
+            Object value = values.get(columns.get(i).getName());
+            if(value == null)
+                statement.bindNull(i);
+            else if(value instanceof byte[])
+                statement.bindBlob(i, (byte[]) value);
+            else if(value instanceof Double || value instanceof Float)
+                statement.bindDouble(i, ((Number) value).doubleValue());
+            else if(value instanceof Number)
+                statement.bindLong(i, ((Number) value).longValue());
+            else if(value instanceof Boolean)
+                statement.bindLong(i, (Boolean) value ? 1 : 0);
+            else
+                statement.bindString(i, value.toString());
+        }
+    }
+
+    /**
+     * Convert a value to how it is stored in a column, to compare it in a query.
+     * The default stores enums by name and booleans as 0/1. Subclasses should override this for other types.
+     * @param column the column compared to.
+     * @param value the value.
+     * @return a String, Number or byte[] value.
+     * @throws DatabaseException if the value cannot be stored in the column.
+     */
+    protected Object toColumnValue(Column column, Object value) throws DatabaseException {
+        if(value instanceof Enum)
+            return ((Enum<?>) value).name();
+        if(value instanceof Boolean)
+            return (Boolean) value ? 1 : 0;
+        return value;
+    }
+
+    /**
+     * Get a compiled statement, compiling it on first use.
+     * Statements are reused until the database changes or `closeStatements()` is called. Callers must synchronize
+     * on the statement while binding and executing it.
+     * @param database the database the statement runs against.
+     * @param sql the statement.
+     * @return the compiled statement.
+     */
+    protected SQLiteStatement getStatement(SQLiteDatabase database, String sql) {
+        synchronized (statements) {
+            if(database != statementsDatabase) {
+                closeStatements();
+                statementsDatabase = database;
+            }
+            SQLiteStatement statement = statements.get(sql);
+            if(statement == null) {
+                statement = database.compileStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+
+    /**
+     * Release all compiled statements. Must be called before the database is closed.
+     */
+    public void closeStatements() {
+        synchronized (statements) {
+            for(SQLiteStatement statement : statements.values())
+                statement.close();
+            statements.clear();
+            statementsDatabase = null;
+        }
+    }
+
     /**
      * Create an element from a query Cursor
      * Precondition: the cursor is at the correct location in the dataset.
@@ -138,6 +290,16 @@ public abstract class Table<T extends Identifiable<Long>> implements CRUDReposit
      */
     protected abstract T fromCursor(Cursor cursor) throws DatabaseException;
 
+    /**
+     * Complete elements read from the table with data stored elsewhere, e.g. child rows in other tables.
+     * Called once per batch of elements read, so that it can load the data of the whole batch in a single query
+     * instead of one query per element. The default does nothing.
+     * @param elements the elements read.
+     * @throws DatabaseException
+     */
+    protected void hydrate(List<T> elements) throws DatabaseException {
+    }
+
     /* DB Operations */
 
     /**
@@ -145,49 +307,72 @@ public abstract class Table<T extends Identifiable<Long>> implements CRUDReposit
      * @param database
      */
     public void createTable(SQLiteDatabase database) throws DatabaseException {
-        database.execSQL(getCreateTableStatement());
+        createSchema(database);
         if(hasInitialData())
             initialize(database);
+
+        // indexing after the initial data is loaded is cheaper than maintaining the indexes on every insert.
+        createIndexes(database);
     }
 
     /**
-     * Drop the table in the sqlite database.
+     * Create only the table in the sqlite database: no initial data and no secondary indexes.
+     * Used when a migration rebuilds the table.
      * @param database
      */
-    public void dropTable(SQLiteDatabase database) {
-        database.execSQL(getDropTableStatement());
+    public void createSchema(SQLiteDatabase database) {
+        database.execSQL(SqlStatements.createTable(name, columns));
     }
 
-    /* CRUD Operations */
-
-    @Override
-    public Long create(T element) throws DatabaseException  {
-
-        SQLiteDatabase database = dbh.getWritableDatabase();
-
-        // Id of inserted element, -1 if error(?).
-        long insertId = -1;
-
-        // insert into DB
+    /**
+     * Create the secondary indexes of the table that do not exist yet.
+     * Used on creation, and to add new indexes when upgrading an existing database.
+     * @param database
+     */
+    public void createIndexes(SQLiteDatabase database) throws DatabaseException {
         try {
-            ContentValues values = toContentValues(element);
-            insertId = database.insertOrThrow(name, null, values);
+            for(Index index : indexes)
+                database.execSQL(SqlStatements.createIndex(name, columns, index));
         }
         catch (SQLException e) {
             throw new DatabaseException(e);
         }
-        finally {
-            database.close();
-        }
+    }
 
-        element.setId(insertId);
+    /**
+     * Drop the secondary indexes of the table.
+     * @param database
+     */
+    public void dropIndexes(SQLiteDatabase database) {
+        for(Index index : indexes)
+            database.execSQL(String.format("DROP INDEX IF EXISTS %s;", index.getName(name)));
+    }
 
-        return insertId;
+    /**
+     * Drop the table in the sqlite database.
+     * @param database
+     */
+    public void dropTable(SQLiteDatabase database) {
+        database.execSQL(SqlStatements.dropTable(name));
+    }
+
+    /* CRUD Operations */
+
+    @Override
+    public Long create(T element) throws DatabaseException  {
+        // a transaction keeps rows a subclass writes to other tables consistent with the element.
+        return inTransaction(() -> insert(dbh.getWritableDatabase(), element));
     }
 
     @Override
     public T read(Long id) throws DatabaseException {
 
+        if(cache != null) {
+            T cached = cache.get(id);
+            if(cached != null)
+                return cached;
+        }
+
         SQLiteDatabase database = dbh.getReadableDatabase();
 
         // query database
@@ -198,59 +383,286 @@ public abstract class Table<T extends Identifiable<Long>> implements CRUDReposit
         if(cursor == null)
             throw new DatabaseException("Operation read(" + id + "): no element with that id");
 
-        // check that only a single row is returned.
-        cursor.moveToFirst();
-        if(!cursor.isLast())
-            throw new DatabaseException("Operation read(" + id + "): more than one row matches. Aborting.");
-
-        T element = fromCursor(cursor);
-        element.setId(id);
-        return element;
+        // the connection stays open, so the cursor must always be closed.
+        try {
+            if(!cursor.moveToFirst())
+                throw new DatabaseException("Operation read(" + id + "): no element with that id");
+
+            // check that only a single row is returned.
+            if(!cursor.isLast())
+                throw new DatabaseException("Operation read(" + id + "): more than one row matches. Aborting.");
+
+            T element = fromCursor(cursor);
+            element.setId(id);
+            hydrate(Collections.singletonList(element));
+            if(cache != null)
+                cache.put(element);
+            return element;
+        }
+        finally {
+            cursor.close();
+        }
     }
 
     @Override
     public List<T> readAll() throws DatabaseException {
         SQLiteDatabase database = dbh.getReadableDatabase();
 
-        List<T> elements = new ArrayList<>();
+        String[] selection = getSelectAll();
+        Cursor cursor = database.query(name, selection, null, null, null, null, null);
+        return readList(cursor);
+    }
+
+    @Override
+    public List<T> readPage(Long afterKey, int limit, Order orderBy) throws DatabaseException {
+        SQLiteDatabase database = dbh.getReadableDatabase();
+
+        if(orderBy == null)
+            orderBy = Order.asc("_id");
+        String column = getColumn(orderBy.getColumn()).getName();
+        boolean descending = orderBy.isDescending();
+
+        String where = null;
+        String[] whereArgs = null;
+        if(afterKey != null) {
+            where = SqlStatements.pageCondition(name, column, descending);
+            whereArgs = new String[SqlStatements.pageParameters(column)];
+            Arrays.fill(whereArgs, String.valueOf(afterKey));
+        }
 
+        String order = SqlStatements.pageOrder(orderBy);
+
+        String[] selection = getSelectAll();
+        Cursor cursor = database.query(name, selection, where, whereArgs, null, null, order, String.valueOf(limit));
+        return readList(cursor);
+    }
+
+    /**
+     * Lazily read all elements of the table: rows are only converted to elements as they are iterated.
+     * The caller must close the result if it does not iterate to the end.
+     * @return the elements of the table.
+     */
+    public CursorIterable<T> iterateAll() {
+        SQLiteDatabase database = dbh.getReadableDatabase();
         String[] selection = getSelectAll();
         Cursor cursor = database.query(name, selection, null, null, null, null, null);
+        return new CursorIterable<>(this, cursor);
+    }
+
+    /**
+     * Lazily read all elements of the table as a stream. The stream must be closed (try-with-resources)
+     * to release its cursor if it is not consumed to the end.
+     * @return the elements of the table.
+     */
+    public Stream<T> streamAll() {
+        CursorIterable<T> elements = iterateAll();
+        return StreamSupport.stream(elements.spliterator(), false).onClose(elements::close);
+    }
+
+    /**
+     * Start a query on the table.
+     * @return the query, to be refined with conditions, ordering and limits.
+     */
+    public Query<T> query() {
+        return new Query<>(this);
+    }
+
+    /*
+     * Read every row of a cursor into a list, close the cursor and hydrate the elements.
+     */
+    List<T> readList(Cursor cursor) throws DatabaseException {
+        List<T> elements = new ArrayList<>();
+        // only the elements that were not cached need their related data.
+        List<T> read = cache == null ? elements : new ArrayList<>();
         if(cursor != null) {
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                T element = fromCursor(cursor);
-                element.setId(cursor.getLong(0));
-                elements.add(element);
-                cursor.moveToNext();
+            try {
+                cursor.moveToFirst();
+                while (!cursor.isAfterLast()) {
+                    T cached = cache == null ? null : cache.get(cursor.getLong(0));
+                    if(cached != null) {
+                        elements.add(cached);
+                    }
+                    else {
+                        T element = fromCursor(cursor);
+                        element.setId(cursor.getLong(0));
+                        elements.add(element);
+                        if(cache != null)
+                            read.add(element);
+                    }
+                    cursor.moveToNext();
+                }
+            }
+            finally {
+                // make sure to close the cursor
+                cursor.close();
             }
-            // makeFactory sure to close the cursor
-            cursor.close();
         }
+        hydrate(read);
+        if(cache != null)
+            for(T element : read)
+                cache.put(element);
         return elements;
     }
 
     @Override
     public boolean update(T element) throws DatabaseException {
+        return inTransaction(() -> update(dbh.getWritableDatabase(), element));
+    }
 
-        SQLiteDatabase database = dbh.getWritableDatabase();
+    @Override
+    public boolean delete(T element) throws DatabaseException {
+        return inTransaction(() -> delete(dbh.getWritableDatabase(), element));
+    }
 
-        ContentValues values = toContentValues(element);
-        String idStr = String.valueOf(element.getId());
-        int rows = database.update(name, values, "_id = ?", new String[]{idStr});
-        database.close();
+    /* Bulk Operations
+     *
+     *   - each bulk operation runs in a single transaction: the database is committed once for all elements
+     *     instead of once per element.
+     * */
 
-        return rows == 1;
+    @Override
+    public List<Long> createAll(Collection<T> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            SQLiteDatabase database = dbh.getWritableDatabase();
+            List<Long> ids = new ArrayList<>(elements.size());
+            for(T element : elements)
+                ids.add(insert(database, element));
+            return ids;
+        });
     }
 
     @Override
-    public boolean delete(T element) throws DatabaseException {
+    public List<Boolean> updateAll(Collection<T> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            SQLiteDatabase database = dbh.getWritableDatabase();
+            List<Boolean> results = new ArrayList<>(elements.size());
+            for(T element : elements)
+                results.add(update(database, element));
+            return results;
+        });
+    }
+
+    @Override
+    public List<Boolean> deleteAll(Collection<T> elements) throws DatabaseException {
+        return inTransaction(() -> {
+            SQLiteDatabase database = dbh.getWritableDatabase();
+            List<Boolean> results = new ArrayList<>(elements.size());
+            for(T element : elements)
+                results.add(delete(database, element));
+            return results;
+        });
+    }
+
+    @Override
+    public <R> R inTransaction(Transaction<R> transaction) throws DatabaseException {
         SQLiteDatabase database = dbh.getWritableDatabase();
-        String idStr = String.valueOf(element.getId());
-        int rows = database.delete(name, "_id = ?", new String[]{idStr});
-        database.close();
+        boolean successful = false;
+        database.beginTransaction();
+        try {
+            R result = transaction.run();
+            database.setTransactionSuccessful();
+            successful = true;
+            return result;
+        }
+        catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+        finally {
+            database.endTransaction();
+            // the cache may hold elements written by the rolled back transaction.
+            if(!successful && cache != null)
+                cache.clear();
+        }
+    }
+
+    /* Single row operations on an open database
+     *
+     *   - these work on the database they are given, so they can be used inside a transaction.
+     * */
+
+    /**
+     * Insert an element, setting its id.
+     * @param database an open, writable database.
+     * @param element
+     * @return the id of the inserted element.
+     * @throws DatabaseException
+     */
+    protected long insert(SQLiteDatabase database, T element) throws DatabaseException {
+        long insertId;
+        SQLiteStatement statement = getStatement(database, getInsertStatement());
+        synchronized (statement) {
+            try {
+                bindValues(statement, element);
+                insertId = statement.executeInsert();
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+            finally {
+                statement.clearBindings();
+            }
+        }
+        if(insertId == -1)
+            throw new DatabaseException("Operation create: insert into " + name + " failed.");
+        element.setId(insertId);
+        cacheWritten(element);
+        return insertId;
+    }
+
+    /**
+     * Update an element by its id.
+     * @param database an open, writable database.
+     * @param element
+     * @return true if element was in the table, false otherwise.
+     * @throws DatabaseException
+     */
+    protected boolean update(SQLiteDatabase database, T element) throws DatabaseException {
+        int rows;
+        SQLiteStatement statement = getStatement(database, getUpdateStatement());
+        synchronized (statement) {
+            try {
+                bindValues(statement, element);
+                statement.bindLong(columns.size(), element.getId());
+                rows = statement.executeUpdateDelete();
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+            finally {
+                statement.clearBindings();
+            }
+        }
+        if(rows == 1)
+            cacheWritten(element);
+        return rows == 1;
+    }
+
+    /**
+     * Delete an element by its id.
+     * @param database an open, writable database.
+     * @param element
+     * @return true if element was in the table, false otherwise.
+     * @throws DatabaseException
+     */
+    protected boolean delete(SQLiteDatabase database, T element) throws DatabaseException {
+        int rows;
+        SQLiteStatement statement = getStatement(database, SqlStatements.delete(name));
+        synchronized (statement) {
+            try {
+                statement.bindLong(1, element.getId());
+                rows = statement.executeUpdateDelete();
+            }
+            catch (SQLException e) {
+                throw new DatabaseException(e);
+            }
+            finally {
+                statement.clearBindings();
+            }
+        }
         if(rows > 1)
             throw new DatabaseException("More than 1 row deleted when deleting note.. possible database corruption.");
+        if(cache != null)
+            cache.remove(element);
         return rows == 1;
     }
 
@@ -21,13 +21,13 @@ import androidx.navigation.ui.NavigationUI;
 import com.google.android.material.snackbar.Snackbar;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 import ca.qc.johnabbott.cs5a6.tasks.R;
 import ca.qc.johnabbott.cs5a6.tasks.databinding.ActivityTasksBinding;
 import ca.qc.johnabbott.cs5a6.tasks.model.Priority;
 import ca.qc.johnabbott.cs5a6.tasks.model.Status;
 import ca.qc.johnabbott.cs5a6.tasks.model.Task;
-import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
 import ca.qc.johnabbott.cs5a6.tasks.ui.editor.TaskEditFragment;
 import ca.qc.johnabbott.cs5a6.tasks.viewmodel.TaskViewModel;
 
@@ -60,10 +60,11 @@ public class TasksActivity extends AppCompatActivity {
                 @Override
                 public void onClick(View view) {
                     try {
+                        String error = "An error occurred. Undo did not apply.";
                         if (taskCreated) {
-                            taskViewModel.undoLatestAdd();
+                            makeSnackBarOnFailure(taskViewModel.undoLatestAdd(), error);
                         } else {
-                            taskViewModel.undoLatestEdit();
+                            makeSnackBarOnFailure(taskViewModel.undoLatestEdit(), error);
                         }
                         taskViewModel.notifyChange();
                     } catch (Exception ex) {
@@ -78,6 +79,14 @@ public class TasksActivity extends AppCompatActivity {
         return Snackbar.make(findViewById(R.id.floatingActionButton), msg, Snackbar.LENGTH_LONG);
     }
 
+    // Shows a snackbar if a write that runs in the background fails.
+    public void makeSnackBarOnFailure(CompletableFuture<?> write, String msg) {
+        write.whenComplete((result, error) -> {
+            if (error != null)
+                runOnUiThread(() -> makeSnackBar(msg).show());
+        });
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -109,6 +118,12 @@ public class TasksActivity extends AppCompatActivity {
         NavigationUI.setupActionBarWithNavController(this, navController, appBarConfiguration);
     }
 
+    @Override
+    protected void onDestroy() {
+        taskViewModel.closeDbHandler();
+        super.onDestroy();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -149,11 +164,7 @@ public class TasksActivity extends AppCompatActivity {
                 .setStatus(Status.PENDING)
                 .setDue(soon)
                 .setPriority(Priority.HIGH);
-        try {
-            taskViewModel.addTask(sample);
-        } catch (DatabaseException e) {
-            e.printStackTrace();
-        }
+        makeSnackBarOnFailure(taskViewModel.addTask(sample), "An error occurred. Test task was not saved.");
     }
 
     public void createNotificationThread(Task task) {
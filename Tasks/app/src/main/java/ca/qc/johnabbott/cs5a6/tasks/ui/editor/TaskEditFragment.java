@@ -67,6 +67,11 @@ public class TaskEditFragment extends Fragment {
             binding.priorityRadioGroup.setVisibility(View.GONE);
             binding.dueDateLinearLayout.setVisibility(View.GONE);
         } else {
+            // The task list only has part of each task: the rest is read in the background when a task is opened.
+            taskViewModel.loadTask(initialTask).whenComplete((task, e) -> {
+                if (e != null)
+                    tasksActivity.makeSnackBar("An error occurred. Could not load the task's details.").show();
+            });
             binding.priorityRadioGroup.setVisibility(View.VISIBLE);
             binding.dueDateLinearLayout.setVisibility(View.VISIBLE);
             selectedDate = initialTask.getDue();
@@ -332,11 +337,13 @@ public class TaskEditFragment extends Fragment {
             try {
                 if (taskViewModel.getTaskToEdit() == null) {
                     // Create a new task.
-                    taskViewModel.addTask(getTask());
+                    tasksActivity.makeSnackBarOnFailure(taskViewModel.addTask(getTask()),
+                            "An error occurred. Task was not saved.");
                     tasksActivity.makeSnackBarForTaskUpdate("Task created.", true);
                 } else {
                     // Edit the task.
-                    taskViewModel.editTask(taskViewModel.getTaskToEdit(), getTask());
+                    tasksActivity.makeSnackBarOnFailure(taskViewModel.editTask(taskViewModel.getTaskToEdit(), getTask()),
+                            "An error occurred. Task was not saved.");
                     tasksActivity.makeSnackBarForTaskUpdate("Task updated.", false);
                 }
                 taskViewModel.notifyChange();
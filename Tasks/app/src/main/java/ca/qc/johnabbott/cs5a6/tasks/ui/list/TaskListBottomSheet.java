@@ -42,7 +42,8 @@ public class TaskListBottomSheet extends BottomSheetDialog {
                     try {
                         task.setPriority(Priority.HIGH);
                         task.setUrgency(task.calculateUrgency(taskViewModel.getOldestDueDate(), taskViewModel.getNow()));
-                        taskViewModel.relocateTask(task);
+                        tasksActivity.makeSnackBarOnFailure(taskViewModel.relocateTask(task),
+                                "An error occurred. Prioritization was not applied.");
                         taskViewModel.notifyChange();
                     } catch(Exception ex) {
                         tasksActivity.makeSnackBar("An error occurred. Prioritization was not applied.");
@@ -57,7 +58,8 @@ public class TaskListBottomSheet extends BottomSheetDialog {
             @Override
             public void onClick(View view) {
                 try {
-                    taskViewModel.removeTask(task);
+                    tasksActivity.makeSnackBarOnFailure(taskViewModel.removeTask(task),
+                            "An error occurred. Deletion was not applied.");
                     taskViewModel.notifyChange();
                 } catch(Exception ex) {
                     tasksActivity.makeSnackBar("An error occurred. Deletion was not applied.");
@@ -123,10 +123,10 @@ public class TaskListRecyclerViewAdapter extends RecyclerView.Adapter<TaskListRe
                 @Override
                 public void onClick(View view) {
                     try {
-                        Status origStatus = task.getStatus();
                         task.setStatus(binding.completedCheckBox.isChecked() ? Status.COMPLETED : Status.PENDING);
                         task.setUrgency(task.calculateUrgency(taskViewModel.getOldestDueDate(), taskViewModel.getNow()));
-                        taskViewModel.relocateTaskNewStatus(task, origStatus);
+                        tasksActivity.makeSnackBarOnFailure(taskViewModel.relocateTask(task),
+                                "An error occurred. Status change was not applied.");
                         taskViewModel.notifyChange();
                     } catch(Exception ex) {
                         tasksActivity.makeSnackBar("An error occurred. Status change was not applied.");
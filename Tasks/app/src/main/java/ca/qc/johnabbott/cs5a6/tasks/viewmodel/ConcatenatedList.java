@@ -0,0 +1,86 @@
+package ca.qc.johnabbott.cs5a6.tasks.viewmodel;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of lists shown one after the other. Changes of the lists show through, nothing is copied.
+ * get(index) and indexOf cost what they cost in the lists, plus a step per list.
+ */
+class ConcatenatedList<E> extends AbstractList<E> {
+
+    private final List<List<E>> parts;
+
+    /**
+     * @param parts the lists, in the order they are shown.
+     */
+    ConcatenatedList(List<? extends List<E>> parts) {
+        this.parts = new ArrayList<>(parts);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (List<E> part : parts)
+            size += part.size();
+        return size;
+    }
+
+    @Override
+    public E get(int index) {
+        if (index >= 0) {
+            int offset = index;
+            for (List<E> part : parts) {
+                if (offset < part.size())
+                    return part.get(offset);
+                offset -= part.size();
+            }
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        int offset = 0;
+        for (List<E> part : parts) {
+            int index = part.indexOf(o);
+            if (index >= 0)
+                return offset + index;
+            offset += part.size();
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        for (List<E> part : parts)
+            if (part.contains(o))
+                return true;
+        return false;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private final Iterator<List<E>> remainingParts = parts.iterator();
+            private Iterator<E> current = remainingParts.next().iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && remainingParts.hasNext())
+                    current = remainingParts.next().iterator();
+                return current.hasNext();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+}
@@ -0,0 +1,307 @@
+package ca.qc.johnabbott.cs5a6.tasks.viewmodel;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * A list kept sorted by a comparator. It is a treap where each node knows the size of its subtree, so adding,
+ * removing, get(index) and indexOf are O(log n) expected, whatever the size of the list.
+ *
+ *   - an element is added before the elements that compare equal to it.
+ *   - elements are found by identity, not equals(), and are never compared once added: an element can be removed
+ *     after the fields it is sorted by changed. Adding it again puts it back in place.
+ *   - an element is in the list at most once, and null elements are not allowed.
+ */
+class OrderStatisticTree<E> extends AbstractList<E> {
+
+    private static final class Node<E> {
+        private final E value;
+        private final int priority;
+        private int size = 1;
+        private Node<E> left;
+        private Node<E> right;
+        private Node<E> parent;
+
+        private Node(E value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private final Comparator<? super E> comparator;
+    private final Map<E, Node<E>> nodes = new IdentityHashMap<>();
+    private final Random random = new Random();
+    private Node<E> root;
+
+    OrderStatisticTree(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+
+        Node<E> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Add an element at its place in the order. If the element is already in the list, it is moved.
+     * @param element
+     * @return true.
+     */
+    @Override
+    public boolean add(E element) {
+        Objects.requireNonNull(element);
+        Node<E> existing = nodes.get(element);
+        if (existing != null)
+            removeNode(existing);
+
+        Node<E> node = new Node<>(element, random.nextInt());
+        nodes.put(element, node);
+        modCount++;
+        if (root == null) {
+            root = node;
+            return true;
+        }
+
+        Node<E> parent = root;
+        while (true) {
+            parent.size++;
+            if (comparator.compare(element, parent.value) <= 0) {
+                if (parent.left == null) {
+                    parent.left = node;
+                    break;
+                }
+                parent = parent.left;
+            } else {
+                if (parent.right == null) {
+                    parent.right = node;
+                    break;
+                }
+                parent = parent.right;
+            }
+        }
+        node.parent = parent;
+
+        while (node.parent != null && node.parent.priority < node.priority)
+            rotateUp(node);
+        return true;
+    }
+
+    /**
+     * Replace the elements of the list, in O(n).
+     * @param sorted elements already in the order of the list. Their order is kept as is, ties included.
+     */
+    void reset(Collection<? extends E> sorted) {
+        clear();
+
+        // Cartesian tree: the last node added is at the bottom of the right spine of the tree.
+        Node<E> last = null;
+        for (E element : sorted) {
+            Objects.requireNonNull(element);
+            Node<E> node = new Node<>(element, random.nextInt());
+            if (nodes.put(element, node) != null)
+                throw new IllegalArgumentException("Element added twice: " + element);
+
+            Node<E> child = null;
+            while (last != null && last.priority < node.priority) {
+                child = last;
+                last = last.parent;
+            }
+            node.left = child;
+            if (child != null)
+                child.parent = node;
+            if (last == null)
+                root = node;
+            else
+                last.right = node;
+            node.parent = last;
+            last = node;
+        }
+        updateSizes(root);
+    }
+
+    @Override
+    public E remove(int index) {
+        E element = get(index);
+        removeNode(nodes.get(element));
+        return element;
+    }
+
+    /**
+     * Remove an element, found by identity.
+     * @param o
+     * @return true if the element was in the list.
+     */
+    @Override
+    public boolean remove(Object o) {
+        Node<E> node = nodes.get(o);
+        if (node == null)
+            return false;
+        removeNode(node);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return nodes.containsKey(o);
+    }
+
+    /**
+     * Position of an element, found by identity.
+     * @param o
+     * @return the position, or -1 if the element is not in the list.
+     */
+    @Override
+    public int indexOf(Object o) {
+        Node<E> node = nodes.get(o);
+        if (node == null)
+            return -1;
+
+        int index = size(node.left);
+        while (node.parent != null) {
+            if (node == node.parent.right)
+                index += size(node.parent.left) + 1;
+            node = node.parent;
+        }
+        return index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        nodes.clear();
+        modCount++;
+    }
+
+    /**
+     * In order, in O(1) amortized per element.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private Node<E> next = first(root);
+            private final int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (next == null)
+                    throw new NoSuchElementException();
+                E value = next.value;
+                next = successor(next);
+                return value;
+            }
+        };
+    }
+
+    private void removeNode(Node<E> node) {
+        // rotate the node down until it has at most one child, keeping the heap order of the priorities.
+        while (node.left != null && node.right != null)
+            rotateUp(node.left.priority > node.right.priority ? node.left : node.right);
+
+        Node<E> child = node.left != null ? node.left : node.right;
+        replaceChild(node.parent, node, child);
+        if (child != null)
+            child.parent = node.parent;
+        for (Node<E> ancestor = node.parent; ancestor != null; ancestor = ancestor.parent)
+            ancestor.size--;
+
+        nodes.remove(node.value);
+        modCount++;
+    }
+
+    // Rotate a node above its parent.
+    private void rotateUp(Node<E> node) {
+        Node<E> parent = node.parent;
+        Node<E> grandParent = parent.parent;
+        if (node == parent.left) {
+            parent.left = node.right;
+            if (node.right != null)
+                node.right.parent = parent;
+            node.right = parent;
+        } else {
+            parent.right = node.left;
+            if (node.left != null)
+                node.left.parent = parent;
+            node.left = parent;
+        }
+        parent.parent = node;
+        node.parent = grandParent;
+        replaceChild(grandParent, parent, node);
+
+        parent.size = size(parent.left) + size(parent.right) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private void replaceChild(Node<E> parent, Node<E> child, Node<E> replacement) {
+        if (parent == null)
+            root = replacement;
+        else if (parent.left == child)
+            parent.left = replacement;
+        else
+            parent.right = replacement;
+    }
+
+    private static <E> int updateSizes(Node<E> node) {
+        if (node == null)
+            return 0;
+        node.size = updateSizes(node.left) + updateSizes(node.right) + 1;
+        return node.size;
+    }
+
+    private static <E> Node<E> first(Node<E> node) {
+        if (node != null)
+            while (node.left != null)
+                node = node.left;
+        return node;
+    }
+
+    private static <E> Node<E> successor(Node<E> node) {
+        if (node.right != null)
+            return first(node.right);
+        while (node.parent != null && node == node.parent.right)
+            node = node.parent;
+        return node.parent;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+}
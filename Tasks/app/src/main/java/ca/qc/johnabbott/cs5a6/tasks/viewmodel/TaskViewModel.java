@@ -1,34 +1,98 @@
 package ca.qc.johnabbott.cs5a6.tasks.viewmodel;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import ca.qc.johnabbott.cs5a6.tasks.model.Status;
 import ca.qc.johnabbott.cs5a6.tasks.model.Task;
 import ca.qc.johnabbott.cs5a6.tasks.model.TaskDatabaseHandler;
+import ca.qc.johnabbott.cs5a6.tasks.model.TaskJournal;
+import ca.qc.johnabbott.cs5a6.tasks.model.TaskListSnapshot;
+import ca.qc.johnabbott.cs5a6.tasks.model.TaskMaintenance;
+import ca.qc.johnabbott.cs5a6.tasks.model.TaskTable;
+import ca.qc.johnabbott.cs5a6.tasks.model.TaskWriteQueue;
 import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Order;
 import ca.qc.johnabbott.cs5a6.tasks.ui.TasksActivity;
 
 public class TaskViewModel extends ObservableModel<TaskViewModel> {
 
+    private static final String TAG = "TaskViewModel";
+
     private TasksActivity tasksActivity;
     private TaskDatabaseHandler dbHandler;
-
-    private List<Task> allTasks;
+    private TaskWriteQueue writeQueue;
+
+    // Task writes not yet flushed to the database.
+    private static final String JOURNAL_FILE_NAME = "tasks.journal";
+
+    // The sorted lists as last shown, to show them on launch before the database is read.
+    private static final String SNAPSHOT_FILE_NAME = "tasks_list.snapshot";
+    // The snapshot is written once the lists have not changed for this long, in millis.
+    private static final long SNAPSHOT_DELAY = 2000;
+    private File snapshotFile;
+    private boolean snapshotScheduled;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable saveSnapshot = this::saveSnapshot;
+    private final Runnable reconcile = this::reconcile;
+
+    // Incremented on every change of the lists, to detect changes made while the database is read.
+    private int modCount;
+
+    // The three status lists, shown one after the other.
+    private final List<Task> allTasks;
     private List<Task> currentTasks;
 
     // Specific list of tasks separated into categories to make sorting easier.
-    private final List<Task> pendingTasks;
-    private final List<Task> completedTasks;
-    private final List<Task> completedTasksNoDue;
+    // Each is a balanced tree: inserting, removing and finding the position of a task are O(log n).
+    private final OrderStatisticTree<Task> pendingTasks;
+    private final OrderStatisticTree<Task> completedTasks;
+    private final OrderStatisticTree<Task> completedTasksNoDue;
+
+    // Highest urgency first.
+    private static final Comparator<Task> PENDING_ORDER = (a, b) -> Double.compare(b.getUrgency(), a.getUrgency());
+    // Most recent due date first.
+    private static final Comparator<Task> COMPLETED_ORDER = (a, b) -> b.getDue().compareTo(a.getDue());
+    // A new task goes before the tasks that sort the same as it: the last completed is first.
+    private static final Comparator<Task> COMPLETED_NO_DUE_ORDER = (a, b) -> 0;
+
+    // The tasks of each status list that match the filter, in the order of the list, shown while a filter is applied.
+    // Tasks are added and removed with the status lists: added before the tasks that sort the same, like in the
+    // status lists, they stay in the same order.
+    private final OrderStatisticTree<Task> filteredPendingTasks;
+    private final OrderStatisticTree<Task> filteredCompletedTasks;
+    private final OrderStatisticTree<Task> filteredCompletedTasksNoDue;
+    private final List<Task> filteredTasks;
+
+    // The task shown for each UUID. Tasks are then found in the lists by identity, without Task.equals().
+    private final Map<UUID, Task> tasksByUuid;
 
     private String currentFilter = null;
+    // Incremented by every change of the filter: a search that completes after a later change is ignored.
+    private int filterSequence;
+    // The tasks changed while a search runs in the background, or null: the search may not have seen them.
+    private Set<UUID> changedDuringSearch;
 
     private Date oldestDue = null;
     private final Date now = new Date();
@@ -44,30 +108,84 @@ public class TaskViewModel extends ObservableModel<TaskViewModel> {
     }
 
     public TaskViewModel() {
-        pendingTasks = new ArrayList<>();
-        completedTasks = new ArrayList<>();
-        completedTasksNoDue = new ArrayList<>();
+        pendingTasks = new OrderStatisticTree<>(PENDING_ORDER);
+        completedTasks = new OrderStatisticTree<>(COMPLETED_ORDER);
+        completedTasksNoDue = new OrderStatisticTree<>(COMPLETED_NO_DUE_ORDER);
+        allTasks = new ConcatenatedList<>(Arrays.asList(pendingTasks, completedTasks, completedTasksNoDue));
+        filteredPendingTasks = new OrderStatisticTree<>(PENDING_ORDER);
+        filteredCompletedTasks = new OrderStatisticTree<>(COMPLETED_ORDER);
+        filteredCompletedTasksNoDue = new OrderStatisticTree<>(COMPLETED_NO_DUE_ORDER);
+        filteredTasks = new ConcatenatedList<>(Arrays.asList(filteredPendingTasks, filteredCompletedTasks,
+                filteredCompletedTasksNoDue));
+        currentTasks = allTasks;
+        tasksByUuid = new HashMap<>();
     }
 
     public void setDbHandler(Context context) throws DatabaseException {
         tasksActivity = (TasksActivity)context;
         dbHandler = new TaskDatabaseHandler(tasksActivity);
-        allTasks = dbHandler.getTaskTable().readAll();
-        currentTasks = allTasks;
-
-        // Get the oldest date in the task list.
-        for (Task task : allTasks) {
-            if (task.getDue() == null || task.getStatus() != Status.COMPLETED)
-                continue;
-            if (oldestDue == null || task.getDue().before(oldestDue))
-                oldestDue = task.getDue();
+        writeQueue = new TaskWriteQueue(dbHandler.getTaskTable(),
+                new TaskJournal(new File(tasksActivity.getFilesDir(), JOURNAL_FILE_NAME)));
+        // The data rewrite left by an upgrade runs on the writer thread, before any write: meanwhile, the tasks are
+        // read from the old table. The journal is replayed on the writer thread too, once the new table is complete.
+        boolean migrating = dbHandler.hasPendingMigrations();
+        if (migrating) {
+            TaskDatabaseHandler handler = dbHandler;
+            writeQueue.submit(() -> {
+                handler.resumeMigrations();
+                return null;
+            }).whenComplete((result, e) -> {
+                if (e != null)
+                    Log.e(TAG, "Could not complete the database upgrade.", e);
+            });
+        }
+        writeQueue.recover().whenComplete((recovered, e) -> {
+            if (e != null)
+                Log.e(TAG, "Could not replay the journal, it is kept and replayed before the next flush.", e);
+        });
+
+        snapshotFile = new File(tasksActivity.getFilesDir(), SNAPSHOT_FILE_NAME);
+        TaskListSnapshot snapshot = TaskListSnapshot.read(snapshotFile, TaskDatabaseHandler.DATABASE_VERSION);
+        if (snapshot != null) {
+            // Show the lists as they were last shown, then check them against the database in the background.
+            showTasks(snapshot);
+            createNotificationThreads(allTasks);
+            reconcile();
+        } else {
+            // the list only needs list rows: the rest of a task is loaded when it is edited.
+            // It is read before the journal is replayed: it is checked again once the replay is done.
+            showTasks(sortTasks(dbHandler.getTaskTable().readAllListRows(), now));
+            createNotificationThreads(allTasks);
+            reconcile();
+            if (!migrating)
+                scheduleSnapshot();
         }
 
-        // Sort the tasks by inserting them one by one.
-        for (Task task : allTasks) {
-            addTaskWithoutDB(task);
+        // Archive old tasks in the background, after the pending writes.
+        // Archived tasks stay in the list until the next launch: saving one of them restores it.
+        TaskMaintenance maintenance = new TaskMaintenance(tasksActivity, dbHandler,
+                tasksActivity.getSharedPreferences(TaskMaintenance.PREFERENCES_NAME, Context.MODE_PRIVATE),
+                TaskMaintenance.DEFAULT_ARCHIVE_AGE);
+        writeQueue.submit(maintenance::run).whenComplete((archived, e) -> {
+            if (e != null)
+                Log.w(TAG, "Database maintenance failed.", e);
+        });
+    }
+
+    // Flushes the pending writes and closes the database connection held by the handler.
+    public void closeDbHandler() {
+        handler.removeCallbacks(reconcile);
+        // the snapshot is written before the queue is closed: the final flush waits for it.
+        if (snapshotScheduled)
+            saveSnapshot();
+        if (writeQueue != null) {
+            writeQueue.close();
+            writeQueue = null;
+        }
+        if (dbHandler != null) {
+            dbHandler.close();
+            dbHandler = null;
         }
-        updateMainList();
     }
 
     public List<Task> getTasks() {
@@ -78,6 +196,12 @@ public class TaskViewModel extends ObservableModel<TaskViewModel> {
         return currentTasks.get(pos);
     }
 
+    // Position of a task in the displayed list, or -1 if it is not displayed.
+    public int getPosition(UUID uuid) {
+        Task task = tasksByUuid.get(uuid);
+        return task == null ? -1 : currentTasks.indexOf(task);
+    }
+
     public int size() {
         return currentTasks.size();
     }
@@ -98,11 +222,54 @@ public class TaskViewModel extends ObservableModel<TaskViewModel> {
         this.taskToEdit = taskToEdit;
     }
 
+    // Reads the parts of a task that are not loaded with the task list, dates and annotations, in the background.
+    // They are set on the task on the UI thread, where the future then completes.
+    public CompletableFuture<Task> loadTask(Task task) {
+        Task copy = task.copy();
+        TaskTable taskTable = dbHandler.getTaskTable();
+        return readInBackground(() -> {
+            taskTable.loadDetails(copy);
+            // annotations that are loaded may also be newer than the database.
+            if (!copy.isAnnotationsLoaded())
+                taskTable.loadAnnotations(copy);
+            return copy;
+        }).thenApply(task::setDetailsFrom);
+    }
+
+    // Reads a page of archived tasks, most recently archived first, in the background.
+    // Pass the id of the last task of the previous page, or null for the first page.
+    public CompletableFuture<List<Task>> getArchivedTasks(Long afterId, int limit) {
+        TaskTable taskTable = dbHandler.getTaskTable();
+        return readInBackground(() -> taskTable.getArchivedTaskTable().readPage(afterId, limit, Order.desc("_id")));
+    }
+
+    // Runs a read on the writer thread, after the pending writes, and completes the future on the UI thread.
+    private <R> CompletableFuture<R> readInBackground(Callable<R> read) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        writeQueue.submit(read).whenComplete((value, e) -> handler.post(() -> {
+            if (e != null)
+                result.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+            else
+                result.complete(value);
+        }));
+        return result;
+    }
+
     // Inserts a new task into the list.
-    public void addTask(Task task) throws DatabaseException {
+    // The task is written to the database in the background: the future reports the outcome.
+    public CompletableFuture<Void> addTask(Task task) {
         addTaskWithoutDB(task);
 
-        dbHandler.getTaskTable().create(task);
+        CompletableFuture<Void> saved = writeQueue.save(task);
+        // a new task only has a local id: it gets the id of its row once it is written.
+        TaskTable taskTable = dbHandler.getTaskTable();
+        saved.thenRun(() -> readInBackground(() -> taskTable.findIdByUuid(task.getUuid()))
+                .whenComplete((id, e) -> {
+                    if (id != null)
+                        task.setId(id);
+                }));
+        return saved;
     }
 
     private void addTaskWithoutDB(Task task) {
@@ -114,159 +281,277 @@ public class TaskViewModel extends ObservableModel<TaskViewModel> {
     }
 
     // Updates the position of a single task according to the sort that applies to it.
-    public void relocateTask(Task task) throws DatabaseException {
-        removeTaskByStatus(task, task.getStatus());
+    // The task may have changed status: it is found by UUID, not in the list of its status.
+    public CompletableFuture<Void> relocateTask(Task task) {
+        removeFromTaskList(task);
         insertIntoTaskList(task);
 
-        dbHandler.getTaskTable().update(task);
-    }
-
-    // Same as relocateTask(), but used for tasks that had their status changed (which affects their position).
-    public void relocateTaskNewStatus(Task task, Status origStatus) throws DatabaseException {
-        removeTaskByStatus(task, origStatus);
-        insertIntoTaskList(task);
-
-        dbHandler.getTaskTable().update(task);
+        return writeQueue.save(task);
     }
 
     // Behaves like relocateTask(), but replaces the task object with an entirely new one.
-    public void editTask(Task oldTask, Task newTask) throws DatabaseException {
+    // Both tasks share a UUID, so the removal and addition are coalesced into a single update.
+    public CompletableFuture<Void> editTask(Task oldTask, Task newTask) {
         lastTaskEditedBeforeChanges = oldTask;
         lastTaskEditedAfterChanges = newTask;
-        removeTask(oldTask);
-        addTask(newTask);
+        CompletableFuture<Void> removal = removeTask(oldTask);
+        CompletableFuture<Void> addition = addTask(newTask);
         setTaskToEdit(null);
 
-        dbHandler.getTaskTable().update(newTask);
+        return CompletableFuture.allOf(removal, addition);
     }
 
     // Removes a task from every list that contains it.
-    public void removeTask(Task task) throws DatabaseException {
-        removeTaskByStatus(task, task.getStatus());
-        currentTasks.remove(task);
-        if (currentFilter != null)
-            allTasks.remove(task);
+    // The task shown with the same UUID is removed, even if it is another object.
+    public CompletableFuture<Void> removeTask(Task task) {
+        removeFromTaskList(task);
 
-        dbHandler.getTaskTable().delete(task);
+        return writeQueue.delete(task);
     }
 
     // Filters the current task list according to a provided search text.
+    // The search runs in the background: the filtered list is shown, and observers notified, once it is done.
+    // Tasks added or changed while the filter is applied are matched in memory, see insertIntoTaskList().
     public void filterTasks(String searchText) {
-        ArrayList<Task> filteredTasks = new ArrayList<>();
         String searchTextLowerCase = searchText.toLowerCase();
-
-        // Only keep tasks with descriptions containing the search text.
-        for (Task task : allTasks) {
-            if (task.getDescription().toLowerCase().contains(searchText)) {
-                filteredTasks.add(task);
+        int sequence = ++filterSequence;
+        changedDuringSearch = new HashSet<>();
+        TaskTable taskTable = dbHandler.getTaskTable();
+
+        readInBackground(() -> taskTable.search(searchText)).whenComplete((uuids, e) -> {
+            // the filter changed again, or was removed, while searching.
+            if (sequence != filterSequence)
+                return;
+            Set<UUID> changed = changedDuringSearch;
+            changedDuringSearch = null;
+
+            Predicate<Task> matches;
+            if (e == null) {
+                // Only keep tasks with description words starting with the search words, in list order.
+                // Tasks with pending writes, or changed during the search, are matched in memory: the database
+                // may not have had their description.
+                Set<UUID> matchingUuids = new HashSet<>(uuids);
+                matches = task -> writeQueue.isPending(task.getUuid()) || changed.contains(task.getUuid())
+                        ? TaskTable.matchesSearch(task.getDescription(), searchText)
+                        : matchingUuids.contains(task.getUuid());
+            } else {
+                // Fall back to descriptions containing the search text.
+                Log.w(TAG, "Could not search the tasks.", e);
+                matches = task -> task.getDescription().toLowerCase().contains(searchTextLowerCase);
             }
-        }
 
-        currentTasks = filteredTasks;
-        currentFilter = searchTextLowerCase;
+            currentFilter = searchTextLowerCase;
+            showFilteredTasks(matches);
+            notifyChange();
+        });
     }
 
     // Removes the filter. All tasks are displayed.
     public void resetFilter() {
+        filterSequence++;
+        changedDuringSearch = null;
         currentTasks = allTasks;
         currentFilter = null;
+        filteredPendingTasks.clear();
+        filteredCompletedTasks.clear();
+        filteredCompletedTasksNoDue.clear();
     }
 
     // Removes the last task added to the list.
-    public void undoLatestAdd() throws DatabaseException {
-        removeTask(lastTaskCreated);
+    public CompletableFuture<Void> undoLatestAdd() {
+        return removeTask(lastTaskCreated);
     }
 
     // Reverts the changes made on the last edited task.
-    public void undoLatestEdit() throws DatabaseException {
-        editTask(lastTaskEditedAfterChanges, lastTaskEditedBeforeChanges);
+    public CompletableFuture<Void> undoLatestEdit() {
+        return editTask(lastTaskEditedAfterChanges, lastTaskEditedBeforeChanges);
     }
 
+    // Shows the tasks of each status list that match, in the order of the list.
+    private void showFilteredTasks(Predicate<Task> matches) {
+        filteredPendingTasks.reset(pendingTasks.stream().filter(matches).collect(Collectors.toList()));
+        filteredCompletedTasks.reset(completedTasks.stream().filter(matches).collect(Collectors.toList()));
+        filteredCompletedTasksNoDue.reset(completedTasksNoDue.stream().filter(matches).collect(Collectors.toList()));
+        currentTasks = filteredTasks;
+    }
 
-    // Rebuilds the task lists while preserving any existing filter.
-    // This method should be used after updating a specific list.
-    private void updateMainList() {
-        allTasks = Stream.of(pendingTasks, completedTasks, completedTasksNoDue)
-                .flatMap(Collection::stream).collect(Collectors.toList());
-        currentTasks = allTasks;
-        if (currentFilter != null) {
-            filterTasks(currentFilter);
-        }
+    private boolean matchesFilter(Task task) {
+        return TaskTable.matchesSearch(task.getDescription(), currentFilter);
     }
 
-    // Inserts a task into its respective status list.
-    // Note: This method does not update the main list.
-    private void insertIntoTaskList(Task task) {
-        if (task.getStatus() != Status.COMPLETED) {
-            insertInPendingList(task);
-        } else if (task.getDue() != null) {
-            insertInCompletedList(task);
-        } else {
-            completedTasksNoDue.add(0, task);
+    // Replaces the status lists with sorted ones.
+    private void showTasks(TaskListSnapshot snapshot) {
+        pendingTasks.reset(snapshot.getPendingTasks());
+        completedTasks.reset(snapshot.getCompletedTasks());
+        completedTasksNoDue.reset(snapshot.getCompletedTasksNoDue());
+        tasksByUuid.clear();
+        for (Task task : allTasks)
+            tasksByUuid.put(task.getUuid(), task);
+
+        // Completed tasks are sorted by due date: the last one is the oldest.
+        oldestDue = completedTasks.isEmpty() ? null : completedTasks.get(completedTasks.size() - 1).getDue();
+        // the tasks read are matched in memory, like the tasks changed while the filter is applied.
+        if (currentFilter != null)
+            showFilteredTasks(this::matchesFilter);
+    }
+
+    private void createNotificationThreads(Collection<Task> tasks) {
+        for (Task task : tasks) {
+            tasksActivity.createNotificationThread(task);
         }
-        updateMainList();
     }
 
-    // Binary insertion for pending tasks (highest urgency first).
-    // Based on: https://www.geeksforgeeks.org/binary-insertion-sort/
-    private void insertInPendingList(Task task) {
-        if (pendingTasks.size() == 0) {
-            pendingTasks.add(task);
-        } else {
+    // Sorts tasks into status lists, in the same order as inserting them one by one.
+    // Does not use the lists of the view model: it can run on another thread.
+    private static TaskListSnapshot sortTasks(List<Task> tasks, Date now) {
+        // Get the oldest date in the task list.
+        Date oldestDue = null;
+        for (Task task : tasks) {
+            if (task.getDue() == null || task.getStatus() != Status.COMPLETED)
+                continue;
+            if (oldestDue == null || task.getDue().before(oldestDue))
+                oldestDue = task.getDue();
+        }
 
-            int low = 0;
-            int high = pendingTasks.size() - 1;
-
-            while (low <= high) {
-                int mid = low + (high - low) / 2;
-                if (task == pendingTasks.get(mid)) {
-                    pendingTasks.add(mid, task);
-                    return;
-                } else if (task.getUrgency() < pendingTasks.get(mid).getUrgency())
-                    low = mid + 1;
-                else
-                    high = mid - 1;
+        // Insertion puts a task before the ones that sort the same as it: going backwards then sorting
+        // with a stable sort gives the same order.
+        List<Task> pending = new ArrayList<>();
+        List<Task> completed = new ArrayList<>();
+        List<Task> completedNoDue = new ArrayList<>();
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+            Task task = tasks.get(i);
+            task.setUrgency(task.calculateUrgency(oldestDue, now));
+            if (task.getStatus() != Status.COMPLETED) {
+                pending.add(task);
+            } else if (task.getDue() != null) {
+                completed.add(task);
+            } else {
+                completedNoDue.add(task);
             }
-
-            pendingTasks.add(low, task);
         }
+        pending.sort(PENDING_ORDER);
+        completed.sort(COMPLETED_ORDER);
+        return new TaskListSnapshot(pending, completed, completedNoDue);
     }
 
-    // Binary insertion for completed tasks (most recent due date first).
-    // Based on: https://www.geeksforgeeks.org/binary-insertion-sort/
-    private void insertInCompletedList(Task task) {
-        if (completedTasks.size() == 0) {
-            completedTasks.add(task);
-        } else {
+    // Reads the lists from the database in the background, after the pending writes, and shows them instead of
+    // the snapshot. Tries again later if the lists changed or a task is edited meanwhile.
+    private void reconcile() {
+        if (writeQueue == null)
+            return;
+        TaskTable taskTable = dbHandler.getTaskTable();
+        int expectedModCount = modCount;
+        writeQueue.submit(() -> sortTasks(taskTable.readAllListRows(), now))
+                .whenComplete((fresh, e) -> handler.post(() -> {
+                    if (e != null) {
+                        Log.w(TAG, "Could not check the task list against the database.", e);
+                        return;
+                    }
+                    if (writeQueue == null)
+                        return;
+                    if (modCount != expectedModCount || taskToEdit != null) {
+                        handler.postDelayed(reconcile, SNAPSHOT_DELAY);
+                        return;
+                    }
+
+                    // Tasks missing from the snapshot have no notification yet.
+                    List<Task> newTasks = new ArrayList<>();
+                    for (Task task : Stream.of(fresh.getPendingTasks(), fresh.getCompletedTasks())
+                            .flatMap(Collection::stream).collect(Collectors.toList())) {
+                        if (!tasksByUuid.containsKey(task.getUuid()))
+                            newTasks.add(task);
+                    }
+
+                    // The tasks read are shown even if they display the same: their urgencies are current.
+                    boolean changed = !fresh.displaysSameAs(
+                            new TaskListSnapshot(pendingTasks, completedTasks, completedTasksNoDue));
+                    showTasks(fresh);
+                    createNotificationThreads(newTasks);
+                    if (changed) {
+                        notifyChange();
+                        scheduleSnapshot();
+                    }
+                }));
+    }
 
-            int low = 0;
-            int high = completedTasks.size() - 1;
-
-            while (low <= high) {
-                int mid = low + (high - low) / 2;
-                if (task == completedTasks.get(mid)) {
-                    completedTasks.add(mid, task);
-                    return;
-                } else if (task.getDue().before(completedTasks.get(mid).getDue()))
-                    low = mid + 1;
-                else
-                    high = mid - 1;
-            }
+    // Writes the snapshot once the lists have not changed for SNAPSHOT_DELAY.
+    private void scheduleSnapshot() {
+        snapshotScheduled = true;
+        handler.removeCallbacks(saveSnapshot);
+        handler.postDelayed(saveSnapshot, SNAPSHOT_DELAY);
+    }
 
-            completedTasks.add(low, task);
-        }
+    // Copies the lists, then writes them in the background, after the pending writes.
+    private void saveSnapshot() {
+        handler.removeCallbacks(saveSnapshot);
+        snapshotScheduled = false;
+        if (writeQueue == null)
+            return;
+
+        TaskListSnapshot snapshot = new TaskListSnapshot(copyTasks(pendingTasks), copyTasks(completedTasks),
+                copyTasks(completedTasksNoDue));
+        File file = snapshotFile;
+        writeQueue.submit(() -> {
+            snapshot.write(file, TaskDatabaseHandler.DATABASE_VERSION);
+            return null;
+        }).whenComplete((result, e) -> {
+            if (e != null)
+                Log.w(TAG, "Could not save the task list snapshot.", e);
+        });
+    }
+
+    // The tasks of the lists are changed on this thread: the snapshot is written from copies.
+    private static List<Task> copyTasks(List<Task> tasks) {
+        List<Task> copies = new ArrayList<>(tasks.size());
+        for (Task task : tasks)
+            copies.add(task.copy());
+        return copies;
     }
 
-    // Removes a task only from its respective status list.
-    private void removeTaskByStatus(Task task, Status status) {
-        if (status != Status.COMPLETED) {
-            pendingTasks.remove(task);
+    // Inserts a task into its respective status list, and into its filtered list if it matches the filter.
+    // Its description may have changed: it is matched in memory, without a search in the database.
+    private void insertIntoTaskList(Task task) {
+        modCount++;
+        scheduleSnapshot();
+        // another object shown for the same task is replaced.
+        Task previous = tasksByUuid.put(task.getUuid(), task);
+        if (previous != null && previous != task)
+            removeFromStatusLists(previous);
+        if (changedDuringSearch != null)
+            changedDuringSearch.add(task.getUuid());
+        boolean shown = currentFilter != null && matchesFilter(task);
+        if (task.getStatus() != Status.COMPLETED) {
+            pendingTasks.add(task);
+            if (shown)
+                filteredPendingTasks.add(task);
         } else if (task.getDue() != null) {
-            completedTasks.remove(task);
+            completedTasks.add(task);
+            if (shown)
+                filteredCompletedTasks.add(task);
         } else {
-            completedTasksNoDue.remove(task);
+            completedTasksNoDue.add(task);
+            if (shown)
+                filteredCompletedTasksNoDue.add(task);
         }
     }
 
+    // Removes the task shown with the same UUID only from its status list, whatever its status now.
+    // Returns the task removed, or null if none is shown.
+    private Task removeFromTaskList(Task task) {
+        Task shown = tasksByUuid.remove(task.getUuid());
+        if (shown == null)
+            return null;
+        modCount++;
+        scheduleSnapshot();
+        removeFromStatusLists(shown);
+        return shown;
+    }
 
+    private void removeFromStatusLists(Task task) {
+        // membership is by identity: checking each list is O(1).
+        if (!pendingTasks.remove(task) && !completedTasks.remove(task))
+            completedTasksNoDue.remove(task);
+        if (currentFilter != null && !filteredPendingTasks.remove(task) && !filteredCompletedTasks.remove(task))
+            filteredCompletedTasksNoDue.remove(task);
+    }
 }
@@ -0,0 +1,63 @@
+package android.util;
+
+/**
+ * android.util.Log for JVM tests, found before the one of android.jar that throws: the model logs from the paths
+ * the tests run. Messages are written to the standard error of the test.
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return println("V", tag, msg, null);
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return println("V", tag, msg, tr);
+    }
+
+    public static int d(String tag, String msg) {
+        return println("D", tag, msg, null);
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return println("D", tag, msg, tr);
+    }
+
+    public static int i(String tag, String msg) {
+        return println("I", tag, msg, null);
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return println("I", tag, msg, tr);
+    }
+
+    public static int w(String tag, String msg) {
+        return println("W", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println("W", tag, msg, tr);
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return println("W", tag, "", tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return println("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println("E", tag, msg, tr);
+    }
+
+    private static int println(String level, String tag, String msg, Throwable tr) {
+        String line = level + "/" + tag + ": " + msg;
+        System.err.println(line);
+        if (tr != null)
+            tr.printStackTrace();
+        return line.length();
+    }
+}
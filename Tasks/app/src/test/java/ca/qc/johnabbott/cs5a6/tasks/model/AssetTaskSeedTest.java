@@ -0,0 +1,78 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * A seed written by AssetTaskSeed.write reads back the same tasks.
+ */
+public class AssetTaskSeedTest {
+
+    private static TaskSeed.Reader open(byte[] bytes) throws IOException {
+        return AssetTaskSeed.read(new DataInputStream(new ByteArrayInputStream(bytes)), "Test seed");
+    }
+
+    @Test
+    public void readsBackWhatIsWritten() throws IOException {
+        List<Task> tasks = GeneratedTasks.generate(1000, 7);
+        tasks.get(0).setDescription(null).setDue(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AssetTaskSeed.write(out, tasks);
+
+        List<Task> read = new ArrayList<>();
+        try (TaskSeed.Reader reader = open(out.toByteArray())) {
+            assertEquals(tasks.size(), reader.size());
+            for (Task task = reader.next(); task != null; task = reader.next())
+                read.add(task);
+            assertNull(reader.next());
+        }
+
+        assertEquals(tasks.size(), read.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            Task expected = tasks.get(i);
+            Task actual = read.get(i);
+            assertEquals(expected.getUuid(), actual.getUuid());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getStatus(), actual.getStatus());
+            assertEquals(expected.getPriority(), actual.getPriority());
+            assertEquals(expected.getEntry(), actual.getEntry());
+            assertEquals(expected.getModified(), actual.getModified());
+            assertEquals(expected.getDue(), actual.getDue());
+            assertEquals(expected.getTags(), actual.getTags());
+        }
+    }
+
+    @Test
+    public void emptySeed() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AssetTaskSeed.write(out, new ArrayList<>());
+        try (TaskSeed.Reader reader = open(out.toByteArray())) {
+            assertEquals(0, reader.size());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        open("not a seed file".getBytes()).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherCodecVersions() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AssetTaskSeed.write(out, new ArrayList<>());
+        byte[] bytes = out.toByteArray();
+        // the version is the int after the magic number.
+        bytes[7]++;
+        open(bytes).close();
+    }
+}
@@ -0,0 +1,52 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generated tasks, as many as needed, to fill a seed or a table in tests.
+ */
+class GeneratedTasks {
+
+    private static final String[] WORDS = {
+            "buy", "call", "clean", "email", "fix", "garbage", "groceries", "invoice", "laundry", "meeting", "plan",
+            "recycling", "report", "review", "schedule", "send", "taxes", "update", "visit", "write" };
+    private static final String[] TAGS = { "home", "work", "school", "errand", "urgent" };
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    /**
+     * Generate tasks that look like the samples of TaskData: a third completed, most with a due date and a tag.
+     * @param count
+     * @param seed of the random generator, the same seed gives the same tasks.
+     * @return the tasks.
+     */
+    static List<Task> generate(int count, long seed) {
+        Random random = new Random(seed);
+        long start = 1609459200000L; // 2021-01-01
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder description = new StringBuilder();
+            int words = 2 + random.nextInt(6);
+            for (int w = 0; w < words; w++)
+                description.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+
+            Date entry = new Date(start + (long) (random.nextDouble() * 365 * DAY));
+            Task task = new Task(new UUID(random.nextLong(), random.nextLong()))
+                    .setDescription(description.toString())
+                    .setStatus(random.nextInt(3) == 0 ? Status.COMPLETED : Status.PENDING)
+                    .setPriority(Priority.values()[random.nextInt(Priority.values().length)])
+                    .setEntry(entry)
+                    .setModified(new Date(entry.getTime() + random.nextInt(10) * DAY));
+            if (random.nextInt(5) != 0)
+                task.setDue(new Date(entry.getTime() + (1 + random.nextInt(30)) * DAY));
+            if (random.nextInt(4) != 0)
+                task.setTags(new ArrayList<>(Arrays.asList(TAGS[random.nextInt(TAGS.length)])));
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
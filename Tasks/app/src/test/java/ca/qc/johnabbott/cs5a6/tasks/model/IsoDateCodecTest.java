@@ -0,0 +1,136 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * IsoDateCodec must produce and accept exactly what SimpleDateFormat does with the same pattern.
+ */
+public class IsoDateCodecTest {
+
+    // UTC, daylight saving time, half-hour and 45-minute offsets, the largest offset, and a zone whose offsets
+    // before 1972 are not whole minutes.
+    private static final String[] ZONES = {
+            "UTC", "America/Montreal", "Australia/Lord_Howe", "Asia/Kolkata", "America/St_Johns",
+            "Asia/Kathmandu", "Pacific/Kiritimati", "Africa/Monrovia" };
+
+    private static final long HOUR = 3600000L;
+
+    private static SimpleDateFormat reference(TimeZone timeZone) {
+        SimpleDateFormat format = new SimpleDateFormat(IsoDateCodec.PATTERN);
+        format.setTimeZone(timeZone);
+        return format;
+    }
+
+    private static void assertSameAsReference(long millis, TimeZone timeZone) throws ParseException {
+        SimpleDateFormat reference = reference(timeZone);
+        String expected = reference.format(new Date(millis));
+        String actual = IsoDateCodec.format(millis, timeZone);
+        assertEquals(timeZone.getID() + " " + millis, expected, actual);
+        assertEquals(timeZone.getID() + " " + expected, reference.parse(expected).getTime(),
+                IsoDateCodec.parse(actual, timeZone));
+    }
+
+    @Test
+    public void randomDates() throws ParseException {
+        Random random = new Random(42);
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (int i = 0; i < 20000; i++) {
+                // years 1900 to 2100, to cover the historical offsets.
+                long millis = -2208988800000L + (long) (random.nextDouble() * 6311433600000L);
+                assertSameAsReference(millis, timeZone);
+            }
+        }
+    }
+
+    @Test
+    public void daylightSavingTimeTransitions() throws ParseException {
+        TimeZone montreal = TimeZone.getTimeZone("America/Montreal");
+        // 2021-03-14 02:00 EST becomes 03:00 EDT, 2021-11-07 02:00 EDT becomes 01:00 EST.
+        long spring = 1615705200000L;
+        long fall = 1636264800000L;
+        for (long millis = spring - 2 * HOUR; millis <= spring + 2 * HOUR; millis += 15 * 60000L)
+            assertSameAsReference(millis, montreal);
+        for (long millis = fall - 2 * HOUR; millis <= fall + 2 * HOUR; millis += 15 * 60000L)
+            assertSameAsReference(millis, montreal);
+
+        // the millisecond on each side of the transitions.
+        assertSameAsReference(spring - 1, montreal);
+        assertSameAsReference(fall - 1, montreal);
+        assertEquals("2021-03-14T01:59:59.999-0500", IsoDateCodec.format(spring - 1, montreal));
+        assertEquals("2021-03-14T03:00:00.000-0400", IsoDateCodec.format(spring, montreal));
+        assertEquals("2021-11-07T01:59:59.999-0400", IsoDateCodec.format(fall - 1, montreal));
+        assertEquals("2021-11-07T01:00:00.000-0500", IsoDateCodec.format(fall, montreal));
+
+        // the repeated hour parses to different instants thanks to the offset.
+        assertEquals(fall - HOUR, IsoDateCodec.parse("2021-11-07T01:00:00.000-0400", montreal));
+        assertEquals(fall, IsoDateCodec.parse("2021-11-07T01:00:00.000-0500", montreal));
+    }
+
+    @Test
+    public void milliseconds() throws ParseException {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        assertEquals("1970-01-01T00:00:00.000+0000", IsoDateCodec.format(0, utc));
+        assertEquals("1970-01-01T00:00:00.001+0000", IsoDateCodec.format(1, utc));
+        assertEquals("1969-12-31T23:59:59.999+0000", IsoDateCodec.format(-1, utc));
+        assertEquals("2000-02-29T23:59:59.999+0000", IsoDateCodec.format(951868799999L, utc));
+        assertEquals(-1, IsoDateCodec.parse("1969-12-31T23:59:59.999+0000", utc));
+        assertEquals(951868799999L, IsoDateCodec.parse("2000-02-29T23:59:59.999+0000", utc));
+        for (String zone : ZONES)
+            for (long millis = -1001; millis <= 1001; millis++)
+                assertSameAsReference(millis, TimeZone.getTimeZone(zone));
+    }
+
+    @Test
+    public void offsetsAreTruncatedToTheMinute() throws ParseException {
+        // Monrovia was at -00:44:30 until 1972.
+        TimeZone monrovia = TimeZone.getTimeZone("Africa/Monrovia");
+        long millis = -631152000000L; // 1950-01-01T00:00:00Z
+        assertEquals(-2670000, monrovia.getOffset(millis));
+        assertEquals("1949-12-31T23:15:30.000-0044", IsoDateCodec.format(millis, monrovia));
+        assertSameAsReference(millis, monrovia);
+    }
+
+    @Test
+    public void parsesOtherOffsetsThanTheTimeZone() throws ParseException {
+        TimeZone kolkata = TimeZone.getTimeZone("Asia/Kolkata");
+        SimpleDateFormat reference = reference(kolkata);
+        for (String string : new String[] {
+                "2024-01-15T09:30:00.000+0000", "2024-01-15T09:30:00.000-0330", "2024-07-01T23:59:59.999+1400" })
+            assertEquals(string, reference.parse(string).getTime(), IsoDateCodec.parse(string, kolkata));
+    }
+
+    @Test
+    public void yearsOutsideTheFastPath() throws ParseException {
+        // before the Gregorian calendar, and years with more than four digits.
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            assertSameAsReference(-12219292800001L, timeZone); // 1582-10-14T23:59:59.999Z
+            assertSameAsReference(-30610224000000L, timeZone); // 1000-01-01
+            assertSameAsReference(253402300799999L, timeZone); // 9999-12-31T23:59:59.999Z
+            assertSameAsReference(253402300800000L, timeZone); // 10000-01-01
+        }
+    }
+
+    @Test
+    public void lenientStringsGoThroughSimpleDateFormat() throws ParseException {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        SimpleDateFormat reference = reference(utc);
+        // SimpleDateFormat is lenient: out of range fields roll over.
+        for (String string : new String[] { "2024-02-30T10:00:00.000+0000", "2024-01-15T25:00:00.000+0000" })
+            assertEquals(string, reference.parse(string).getTime(), IsoDateCodec.parse(string, utc));
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsWhatSimpleDateFormatRejects() throws ParseException {
+        IsoDateCodec.parse("15/01/2024", TimeZone.getTimeZone("UTC"));
+    }
+}
@@ -0,0 +1,302 @@
+package ca.qc.johnabbott.cs5a6.tasks.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.DatabaseException;
+import ca.qc.johnabbott.cs5a6.tasks.model.sqlite.Order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TaskLogRepository on files: replay after a crash, compaction while tasks are written, and reopening from the
+ * mapped index. A crash is simulated by copying the files of an open log, as they are on disk, and opening the copy.
+ */
+public class TaskLogRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private TaskLogRepository repository;
+
+    @Before
+    public void setUp() throws IOException, DatabaseException {
+        directory = folder.newFolder("log");
+        repository = new TaskLogRepository(directory);
+    }
+
+    @After
+    public void tearDown() {
+        if (repository != null)
+            repository.close();
+    }
+
+    private static Task newTask(String description) {
+        return new Task(UUID.randomUUID())
+                .setDescription(description)
+                .setStatus(Status.PENDING)
+                .setEntry(new Date(1600000000000L))
+                .setModified(new Date(1600000000000L))
+                .setTags(new ArrayList<>(Arrays.asList("home", "work")));
+    }
+
+    private static List<Task> newTasks(String prefix, int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            tasks.add(newTask(prefix + i));
+        return tasks;
+    }
+
+    private File logFile(File directory) {
+        return new File(directory, TaskLogRepository.LOG_FILE_NAME);
+    }
+
+    private File indexFile(File directory) {
+        return new File(directory, TaskLogRepository.INDEX_FILE_NAME);
+    }
+
+    // The files of the open log as a crash would leave them: the index is the one of the last close.
+    private File crashCopy(String name) throws IOException {
+        File copy = folder.newFolder(name);
+        Files.copy(logFile(directory).toPath(), logFile(copy).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (indexFile(directory).exists())
+            Files.copy(indexFile(directory).toPath(), indexFile(copy).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return copy;
+    }
+
+    private static void assertStored(TaskLogRepository repository, List<Task> tasks) throws DatabaseException {
+        for (Task task : tasks) {
+            Task read = repository.read(task.getId());
+            assertEquals(task.getUuid(), read.getUuid());
+            assertEquals(task.getDescription(), read.getDescription());
+            assertEquals(task.getTags(), read.getTags());
+            assertEquals(task.getId(), repository.readByUuid(task.getUuid()).getId());
+        }
+    }
+
+    private static long generation(File log) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+            file.seek(8);
+            return file.readLong();
+        }
+    }
+
+    @Test
+    public void replayDropsATornFrame() throws IOException, DatabaseException {
+        List<Task> tasks = newTasks("Task ", 100);
+        repository.createAll(tasks);
+        long committed = logFile(directory).length();
+
+        // a frame header announcing more bytes than were written before the crash.
+        File torn = crashCopy("torn");
+        try (RandomAccessFile file = new RandomAccessFile(logFile(torn), "rw")) {
+            file.seek(file.length());
+            file.writeInt(50);
+            file.writeInt(0x12345678);
+            file.write(new byte[] { 1, 2, 3 });
+        }
+        TaskLogRepository reopened = new TaskLogRepository(torn);
+        try {
+            assertEquals(100, reopened.size());
+            assertStored(reopened, tasks);
+            assertEquals(committed, logFile(torn).length());
+
+            // the log goes on after the truncated frame.
+            Task after = newTask("After the crash");
+            reopened.create(after);
+            reopened.close();
+            reopened = new TaskLogRepository(torn);
+            assertEquals(101, reopened.size());
+            assertStored(reopened, Collections.singletonList(after));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void replayDropsAFrameWithABadChecksum() throws IOException, DatabaseException {
+        List<Task> tasks = newTasks("Task ", 100);
+        repository.createAll(tasks);
+        long before = logFile(directory).length();
+        List<Task> lost = newTasks("Lost ", 10);
+        repository.createAll(lost);
+        long after = logFile(directory).length();
+
+        File corrupt = crashCopy("corrupt");
+        try (RandomAccessFile file = new RandomAccessFile(logFile(corrupt), "rw")) {
+            long position = (before + after) / 2;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+        TaskLogRepository reopened = new TaskLogRepository(corrupt);
+        try {
+            // the whole transaction is lost, not only the damaged task.
+            assertEquals(100, reopened.size());
+            assertStored(reopened, tasks);
+            for (Task task : lost)
+                assertNull(reopened.readByUuid(task.getUuid()));
+            assertEquals(before, logFile(corrupt).length());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void compactionKeepsWritesMadeWhileItRuns() throws Exception {
+        List<Task> tasks = newTasks("Task ", 500);
+        repository.createAll(tasks);
+        long uncompacted = logFile(directory).length();
+
+        // another thread keeps creating tasks while the updates below trigger compactions.
+        List<Task> created = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    Task task = newTask("Created " + i);
+                    repository.create(task);
+                    created.add(task);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+
+        for (int round = 0; round < 10; round++) {
+            for (Task task : tasks) {
+                task.setDescription(task.getDescription() + ".");
+                assertTrue(repository.update(task));
+            }
+            // reads are served from the old or the new log, whichever is current.
+            assertStored(repository, tasks);
+        }
+        for (int i = 0; i < 100; i++)
+            assertTrue(repository.delete(tasks.get(i)));
+        writer.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        List<Task> remaining = tasks.subList(100, tasks.size());
+        assertEquals(400 + created.size(), repository.size());
+        assertStored(repository, remaining);
+        assertStored(repository, created);
+
+        // closing waits for a running compaction.
+        repository.close();
+        repository = null;
+        assertTrue(generation(logFile(directory)) > 1);
+
+        TaskLogRepository reopened = new TaskLogRepository(directory);
+        try {
+            assertEquals(400 + created.size(), reopened.size());
+            assertStored(reopened, remaining);
+            assertStored(reopened, created);
+            for (int i = 0; i < 100; i++)
+                assertNull(reopened.readByUuid(tasks.get(i).getUuid()));
+            // the superseded records left are fewer than the live ones or the compaction threshold, which is far
+            // less than the ten rounds of updates.
+            long record = uncompacted / tasks.size();
+            assertTrue(logFile(directory).length() < (2L * reopened.size() + 1000) * record * 11 / 10);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void reopenMapsTheIndexAndReplaysOnlyWhatFollows() throws IOException, DatabaseException {
+        List<Task> tasks = newTasks("Task ", 300);
+        repository.createAll(tasks);
+        for (int i = 0; i < 50; i++)
+            repository.update(tasks.get(i).setDescription("Updated " + i));
+        for (int i = 250; i < 300; i++)
+            repository.delete(tasks.get(i));
+        repository.close();
+
+        long length = logFile(directory).length();
+        TaskLogIndex index = TaskLogIndex.map(indexFile(directory), generation(logFile(directory)), length);
+        assertNotNull(index);
+        assertEquals(length, index.getBaseLogLength());
+        assertEquals(250, index.size());
+
+        repository = new TaskLogRepository(directory);
+        List<Task> kept = tasks.subList(0, 250);
+        assertEquals(250, repository.size());
+        assertStored(repository, kept);
+        List<Task> page = repository.readPage(tasks.get(9).getId(), 5, Order.desc("_id"));
+        assertEquals(5, page.size());
+        assertEquals(tasks.get(8).getId(), page.get(0).getId());
+
+        // after a crash, the index of the last close is mapped and only the frames after it are replayed.
+        List<Task> added = newTasks("Added ", 20);
+        repository.createAll(added);
+        repository.delete(tasks.get(0));
+        File crashed = crashCopy("crashed");
+        TaskLogIndex stale = TaskLogIndex.map(indexFile(crashed), generation(logFile(crashed)),
+                logFile(crashed).length());
+        assertNotNull(stale);
+        assertEquals(length, stale.getBaseLogLength());
+
+        TaskLogRepository reopened = new TaskLogRepository(crashed);
+        try {
+            assertEquals(269, reopened.size());
+            assertStored(reopened, added);
+            assertStored(reopened, tasks.subList(1, 250));
+            assertNull(reopened.readByUuid(tasks.get(0).getUuid()));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void aDamagedIndexIsIgnored() throws IOException, DatabaseException {
+        List<Task> tasks = newTasks("Task ", 100);
+        repository.createAll(tasks);
+        repository.close();
+        repository = null;
+
+        try (RandomAccessFile file = new RandomAccessFile(indexFile(directory), "rw")) {
+            file.writeInt(0);
+        }
+        assertNull(TaskLogIndex.map(indexFile(directory), 1, logFile(directory).length()));
+
+        // the whole log is replayed instead.
+        repository = new TaskLogRepository(directory);
+        assertEquals(100, repository.size());
+        assertStored(repository, tasks);
+    }
+
+    @Test
+    public void pagesAreOrderedByIdOnly() throws DatabaseException {
+        repository.createAll(newTasks("Task ", 10));
+        try {
+            repository.readPage(null, 5, Order.asc(TaskTable.COLUMN_DUE));
+            fail("the log has no other order than ids");
+        } catch (DatabaseException e) {
+            // expected.
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package ca.qc.johnabbott.cs5a6.tasks.model.sqlite;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import ca.qc.johnabbott.cs5a6.tasks.model.Priority;
+import ca.qc.johnabbott.cs5a6.tasks.model.Status;
+import ca.qc.johnabbott.cs5a6.tasks.model.Task;
+import ca.qc.johnabbott.cs5a6.tasks.model.TaskRowCodec;
+import ca.qc.johnabbott.cs5a6.tasks.model.TaskTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * JdbcTable with the task columns, on an in-memory SQLite database of the sqlite-jdbc driver.
+ */
+public class JdbcTableTest {
+
+    private Connection connection;
+    private JdbcTable<Task> table;
+
+    @Before
+    public void setUp() throws SQLException, DatabaseException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        table = new JdbcTable<>(connection, TaskTable.TABLE_NAME, TaskRowCodec.INSTANCE);
+        table.addIndex(new Index(TaskTable.COLUMN_UUID).unique());
+        table.createTable();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        table.close();
+        connection.close();
+    }
+
+    private static Task task(Random random, int i) {
+        Task task = new Task(new UUID(random.nextLong(), random.nextLong()))
+                .setDescription("Task " + i)
+                .setStatus(random.nextBoolean() ? Status.PENDING : Status.COMPLETED)
+                .setPriority(Priority.values()[random.nextInt(Priority.values().length)])
+                .setEntry(new Date(1600000000000L + i * 1000L))
+                .setModified(new Date(1600000000000L + i * 2000L))
+                .setUrgency(random.nextInt(5));
+        // some tasks without due date, and many ties, to page through.
+        if (random.nextInt(4) != 0)
+            task.setDue(new Date(1700000000000L + random.nextInt(20) * 86400000L));
+        return task;
+    }
+
+    private List<Task> createTasks(int count) throws DatabaseException {
+        Random random = new Random(count);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            tasks.add(task(random, i));
+        table.createAll(tasks);
+        return tasks;
+    }
+
+    private static void assertSameTask(Task expected, Task actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getUuid(), actual.getUuid());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getPriority(), actual.getPriority());
+        assertEquals(expected.getEntry(), actual.getEntry());
+        assertEquals(expected.getModified(), actual.getModified());
+        assertEquals(expected.getDue(), actual.getDue());
+        assertEquals(expected.getUrgency(), actual.getUrgency(), 0);
+    }
+
+    @Test
+    public void createReadUpdateDelete() throws DatabaseException {
+        Task task = task(new Random(1), 1).setDue(null).setDescription(null);
+        long id = table.create(task);
+        assertEquals(Long.valueOf(id), task.getId());
+        assertSameTask(task, table.read(id));
+
+        task.setDescription("Changed").setStatus(Status.COMPLETED).setDue(new Date(1700000000000L)).setUrgency(2.5);
+        assertTrue(table.update(task));
+        assertSameTask(task, table.read(id));
+
+        assertTrue(table.delete(task));
+        assertFalse(table.delete(task));
+        assertFalse(table.update(task));
+        try {
+            table.read(id);
+            fail("the task was deleted");
+        } catch (DatabaseException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void bulkOperations() throws DatabaseException {
+        List<Task> tasks = createTasks(50);
+        List<Task> read = table.readAll();
+        assertEquals(tasks.size(), read.size());
+        for (int i = 0; i < tasks.size(); i++)
+            assertSameTask(tasks.get(i), read.get(i));
+
+        for (Task task : tasks)
+            task.setUrgency(task.getUrgency() + 10);
+        for (boolean updated : table.updateAll(tasks))
+            assertTrue(updated);
+        assertSameTask(tasks.get(7), table.read(tasks.get(7).getId()));
+
+        for (boolean deleted : table.deleteAll(tasks.subList(0, 20)))
+            assertTrue(deleted);
+        assertEquals(30, table.readAll().size());
+    }
+
+    @Test
+    public void failedTransactionIsRolledBack() throws DatabaseException {
+        createTasks(10);
+        Task duplicate = task(new Random(2), 2);
+        try {
+            table.inTransaction(() -> {
+                table.create(task(new Random(3), 3));
+                // the nested call fails on the unique UUID index.
+                table.createAll(Arrays.asList(duplicate, duplicate.copy()));
+                return null;
+            });
+            fail("the UUID is unique");
+        } catch (DatabaseException e) {
+            // expected.
+        }
+        assertEquals(10, table.readAll().size());
+    }
+
+    private List<Task> readAllPages(int limit, Order orderBy) throws DatabaseException {
+        List<Task> all = new ArrayList<>();
+        Long afterKey = null;
+        while (true) {
+            List<Task> page = table.readPage(afterKey, limit, orderBy);
+            assertTrue(page.size() <= limit);
+            all.addAll(page);
+            if (page.size() < limit)
+                return all;
+            afterKey = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private static void assertSameOrder(List<Task> expected, List<Task> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals("position " + i, expected.get(i).getId(), actual.get(i).getId());
+    }
+
+    @Test
+    public void pagesById() throws DatabaseException {
+        List<Task> tasks = createTasks(253);
+        assertSameOrder(tasks, readAllPages(40, null));
+        assertSameOrder(tasks, readAllPages(253, Order.asc("_id")));
+
+        List<Task> descending = new ArrayList<>(tasks);
+        descending.sort(Comparator.comparing(Task::getId).reversed());
+        assertSameOrder(descending, readAllPages(17, Order.desc("_id")));
+    }
+
+    @Test
+    public void pagesByColumnWithTiesAndNulls() throws DatabaseException {
+        List<Task> tasks = createTasks(253);
+
+        // ties are ordered by id in the same direction, nulls come first in ascending order.
+        Comparator<Task> byDue = Comparator.comparing(Task::getDue, Comparator.nullsFirst(Comparator.naturalOrder()));
+        List<Task> ascending = new ArrayList<>(tasks);
+        ascending.sort(byDue.thenComparing(Task::getId));
+        assertSameOrder(ascending, readAllPages(10, Order.asc(TaskTable.COLUMN_DUE)));
+
+        List<Task> descending = new ArrayList<>(tasks);
+        descending.sort(byDue.thenComparing(Task::getId).reversed());
+        assertSameOrder(descending, readAllPages(10, Order.desc(TaskTable.COLUMN_DUE)));
+
+        List<Task> byUrgency = new ArrayList<>(tasks);
+        byUrgency.sort(Comparator.comparingDouble(Task::getUrgency).thenComparing(Task::getId).reversed());
+        assertSameOrder(byUrgency, readAllPages(33, Order.desc(TaskTable.COLUMN_URGENCY)));
+    }
+
+    @Test
+    public void pageAfterADeletedRowById() throws DatabaseException {
+        List<Task> tasks = createTasks(30);
+        List<Task> first = table.readPage(null, 10, null);
+        table.delete(first.get(9));
+        // by id, the next page still starts after the deleted row.
+        List<Task> next = table.readPage(first.get(9).getId(), 10, null);
+        assertSameOrder(tasks.subList(10, 20), next);
+    }
+}
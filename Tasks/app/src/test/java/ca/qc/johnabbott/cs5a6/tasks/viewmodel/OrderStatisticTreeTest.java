@@ -0,0 +1,174 @@
+package ca.qc.johnabbott.cs5a6.tasks.viewmodel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * OrderStatisticTree against a sorted ArrayList, with random operations and many ties.
+ */
+public class OrderStatisticTreeTest {
+
+    // Found by identity: there is no equals().
+    private static final class Item {
+        private int key;
+
+        private Item(int key) {
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return "Item " + key + "@" + System.identityHashCode(this);
+        }
+    }
+
+    private static final Comparator<Item> ORDER = Comparator.comparingInt(item -> item.key);
+
+    // The list the tree should be: sorted, an item added before the items that compare equal to it.
+    private static final class Reference {
+        private final List<Item> items = new ArrayList<>();
+
+        private void add(Item item) {
+            remove(item);
+            int index = 0;
+            while (index < items.size() && ORDER.compare(item, items.get(index)) > 0)
+                index++;
+            items.add(index, item);
+        }
+
+        private int indexOf(Item item) {
+            for (int i = 0; i < items.size(); i++)
+                if (items.get(i) == item)
+                    return i;
+            return -1;
+        }
+
+        private boolean remove(Item item) {
+            int index = indexOf(item);
+            if (index < 0)
+                return false;
+            items.remove(index);
+            return true;
+        }
+    }
+
+    private static void assertSameItems(List<Item> expected, OrderStatisticTree<Item> tree) {
+        assertEquals(expected.size(), tree.size());
+        int i = 0;
+        for (Item item : tree)
+            assertSame("position " + i, expected.get(i++), item);
+        for (i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), tree.get(i));
+            assertEquals(i, tree.indexOf(expected.get(i)));
+        }
+    }
+
+    @Test
+    public void randomOperations() {
+        Random random = new Random(42);
+        OrderStatisticTree<Item> tree = new OrderStatisticTree<>(ORDER);
+        Reference reference = new Reference();
+        List<Item> known = new ArrayList<>();
+
+        for (int step = 0; step < 20000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 4 || known.isEmpty()) {
+                Item item = new Item(random.nextInt(50));
+                known.add(item);
+                assertTrue(tree.add(item));
+                reference.add(item);
+            } else if (operation < 6) {
+                // the key of an item can change while it is in the list: adding it again moves it.
+                Item item = known.get(random.nextInt(known.size()));
+                boolean present = reference.remove(item);
+                assertEquals(present, tree.remove(item));
+                item.key = random.nextInt(50);
+                tree.add(item);
+                reference.add(item);
+            } else if (operation < 8) {
+                Item item = known.get(random.nextInt(known.size()));
+                assertEquals(reference.remove(item), tree.remove(item));
+                assertFalse(tree.contains(item));
+                assertEquals(-1, tree.indexOf(item));
+            } else if (operation < 9 && !reference.items.isEmpty()) {
+                int index = random.nextInt(reference.items.size());
+                assertSame(reference.items.remove(index), tree.remove(index));
+            } else {
+                Item item = known.get(random.nextInt(known.size()));
+                assertEquals(reference.indexOf(item), tree.indexOf(item));
+                assertEquals(reference.indexOf(item) >= 0, tree.contains(item));
+            }
+
+            if (step % 500 == 0)
+                assertSameItems(reference.items, tree);
+        }
+        assertSameItems(reference.items, tree);
+    }
+
+    @Test
+    public void resetKeepsTheOrderGiven() {
+        Random random = new Random(7);
+        OrderStatisticTree<Item> tree = new OrderStatisticTree<>(ORDER);
+        for (int round = 0; round < 20; round++) {
+            Reference reference = new Reference();
+            for (int i = random.nextInt(300); i > 0; i--)
+                reference.add(new Item(random.nextInt(10)));
+            tree.reset(reference.items);
+            assertSameItems(reference.items, tree);
+
+            // adding after a reset is the same as adding to the sorted list.
+            for (int i = 0; i < 50; i++) {
+                Item item = new Item(random.nextInt(10));
+                tree.add(item);
+                reference.add(item);
+            }
+            assertSameItems(reference.items, tree);
+        }
+    }
+
+    @Test
+    public void aTreeOfSomeOfTheItemsStaysInTheSameOrder() {
+        // a filtered list of the view model gets the adds and removes of its status list for the items it shows.
+        Random random = new Random(3);
+        OrderStatisticTree<Item> all = new OrderStatisticTree<>(ORDER);
+        OrderStatisticTree<Item> some = new OrderStatisticTree<>(ORDER);
+        List<Item> known = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Item item = new Item(random.nextInt(5));
+            known.add(item);
+            all.add(item);
+        }
+        List<Item> selected = new ArrayList<>();
+        for (Item item : all)
+            if (random.nextBoolean())
+                selected.add(item);
+        some.reset(selected);
+
+        for (int step = 0; step < 5000; step++) {
+            Item item = known.get(random.nextInt(known.size()));
+            all.remove(item);
+            some.remove(item);
+            if (random.nextInt(4) != 0) {
+                item.key = random.nextInt(5);
+                all.add(item);
+                if (random.nextBoolean())
+                    some.add(item);
+            }
+        }
+
+        List<Item> expected = new ArrayList<>();
+        for (Item item : all)
+            if (some.contains(item))
+                expected.add(item);
+        assertSameItems(expected, some);
+    }
+}